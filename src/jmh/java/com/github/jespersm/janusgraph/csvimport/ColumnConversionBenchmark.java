@@ -0,0 +1,97 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.github.jespersm.janusgraph.csvimport;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Converting field values with the column handlers made from the header declarations.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ColumnConversionBenchmark {
+	private static final int VALUES = 1024;
+
+	@Param({"string", "int", "long", "double", "boolean", "datetime", "uuid"})
+	private String type;
+
+	private ColumnHandler<?> handler;
+	private CharSequence[] values;
+
+	@Setup
+	public void setup() throws IOException {
+		File file = File.createTempFile("columns", ".csv");
+		file.deleteOnExit();
+		Files.write(file.toPath(), Collections.singletonList("value:" + type), StandardCharsets.UTF_8);
+		handler = new VertexFileHandler("Bench", file.getPath(), Integer.MAX_VALUE).makeColumnHandler("value:" + type);
+
+		Random random = new Random(42);
+		values = new CharSequence[VALUES];
+		for (int i = 0; i < VALUES; ++i) {
+			values[i] = sample(random);
+		}
+	}
+
+	private String sample(Random random) {
+		switch (type) {
+		case "int":
+			return Integer.toString(random.nextInt());
+		case "long":
+			return Long.toString(random.nextLong());
+		case "double":
+			return Double.toString(random.nextDouble() * 1e6);
+		case "boolean":
+			return Boolean.toString(random.nextBoolean());
+		case "datetime":
+			return String.format("2019-%02d-%02dT%02d:%02d:%02dZ", 1 + random.nextInt(12), 1 + random.nextInt(28),
+					random.nextInt(24), random.nextInt(60), random.nextInt(60));
+		case "uuid":
+			return new UUID(random.nextLong(), random.nextLong()).toString();
+		default:
+			return "name-" + random.nextInt(1000000);
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(VALUES)
+	public void convert(Blackhole blackhole) {
+		for (CharSequence value : values) {
+			blackhole.consume(handler.convert(value));
+		}
+	}
+}
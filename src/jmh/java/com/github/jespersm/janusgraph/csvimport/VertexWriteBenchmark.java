@@ -0,0 +1,98 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.github.jespersm.janusgraph.csvimport;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.janusgraph.core.JanusGraph;
+import org.janusgraph.core.JanusGraphFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.jespersm.janusgraph.csvimport.idmap.IdMapFactory;
+import com.github.jespersm.janusgraph.csvimport.input.FileChunk;
+import com.github.jespersm.janusgraph.csvimport.schema.DefaultSchemaBuilder;
+
+/**
+ * Writing batches of converted rows as vertices with properties, each batch in a transaction
+ * of its own, against the inmemory backend with batch loading. Measures the cost of the import
+ * and of JanusGraph itself, without any storage backend.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class VertexWriteBenchmark {
+	private static final int BATCH_SIZE = 1000;
+
+	private File file;
+	private JanusGraph graph;
+	private VertexFileHandler handler;
+	private FileChunk chunk;
+	private long nextId = 0;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		file = File.createTempFile("vertices", ".csv");
+		Files.write(file.toPath(), Collections.singletonList("id:long:ID,name:string,score:double,active:boolean"), StandardCharsets.UTF_8);
+		chunk = new FileChunk(file, 0, file.length());
+
+		graph = JanusGraphFactory.build()
+				.set("storage.backend", "inmemory")
+				.set("storage.batch-loading", true)
+				.set("ids.block-size", 100000)
+				.open();
+		handler = new VertexFileHandler("Bench", file.getPath(), Integer.MAX_VALUE);
+		try (DefaultSchemaBuilder schema = new DefaultSchemaBuilder(graph)) {
+			handler.parseHeaders(schema);
+			schema.globalVertexIndex("_label", String.class);
+			schema.done();
+		}
+		handler.setKeyMap(new IdMapFactory().create(Collections.singleton(handler.getIdType())));
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		graph.close();
+		file.delete();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BATCH_SIZE)
+	public void writeBatch() {
+		RowBatch batch = new RowBatch(handler, chunk);
+		for (int i = 0; i < BATCH_SIZE; ++i) {
+			long id = nextId++;
+			batch.add(new Object[] { id, "Name number " + id, id * 0.5, (id & 1) == 0 });
+		}
+		handler.writeBatch(graph, batch);
+	}
+}
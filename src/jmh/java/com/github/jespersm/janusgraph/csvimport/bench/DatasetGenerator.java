@@ -0,0 +1,257 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.github.jespersm.janusgraph.csvimport.bench;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import picocli.CommandLine;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
+
+/**
+ * Writes a synthetic graph as vertex and edge files in the header format of the import,
+ * along with an argument file for loading it, for benchmarking imports at different scales.
+ *
+ * Like the import expects, only the first file of the vertices and of the edges has a header.
+ * Vertex IDs run from 0, so the graph can also be loaded with --derive-vertex-ids. Edge
+ * endpoints are drawn so that vertex degrees follow a power law, with the high degree
+ * vertices spread over the ID range. The output only depends on the options, including
+ * the seed.
+ */
+@Command(name = "generate-dataset", description = "Generate a synthetic graph for benchmarking imports")
+public class DatasetGenerator implements Callable<Void> {
+	private static final Logger LOG = LoggerFactory.getLogger(DatasetGenerator.class);
+	private static final int BUFFER_SIZE = 1 << 20;
+	private static final String[] WORDS = { "alpha", "bravo", "charlie", "delta", "echo", "foxtrot", "golf", "hotel",
+			"india", "juliet", "kilo", "lima", "mike", "november", "oscar", "papa" };
+
+	static enum Mode {
+		CSV(','), TSV('\t');
+
+		final char delimiter;
+
+		Mode(char delimiter) {
+			this.delimiter = delimiter;
+		}
+	}
+
+	@Option(names = {"-o", "--out"}, required = true, description = "Directory to write the files to")
+	private File directory;
+
+	@Option(names = {"--label"}, description = "Label of the vertices (default Node)")
+	private String label = "Node";
+
+	@Option(names = {"--vertices"}, description = "Number of vertices (default 100000)")
+	private long vertices = 100000;
+
+	@Option(names = {"--edges-per-vertex"}, description = "Average number of edges per vertex (default 5)")
+	private double edgesPerVertex = 5;
+
+	@Option(names = {"--degree-exponent"}, description = "Exponent of the power law of vertex degrees, above 1 and typically 2 to 3, or 0 for uniformly random endpoints (default 2.5)")
+	private double degreeExponent = 2.5;
+
+	@Option(names = {"--vertex-columns"}, split = ",", description = "Types of the data columns of vertices (default string,int,double)")
+	private List<String> vertexColumns = Arrays.asList("string", "int", "double");
+
+	@Option(names = {"--edge-columns"}, split = ",", description = "Types of the data columns of edges (default datetime)")
+	private List<String> edgeColumns = Arrays.asList("datetime");
+
+	@Option(names = {"--edge-types"}, split = ",", description = "Labels of the edges (default KNOWS,MET)")
+	private List<String> edgeTypes = Arrays.asList("KNOWS", "MET");
+
+	@Option(names = {"--vertex-files"}, description = "Number of files to divide the vertices into (default 1)")
+	private int vertexFiles = 1;
+
+	@Option(names = {"--edge-files"}, description = "Number of files to divide the edges into (default 1)")
+	private int edgeFiles = 1;
+
+	@Option(names = {"--mode"}, description = "CSV with quoted strings, or TSV. Valid values: ${COMPLETION-CANDIDATES}")
+	private Mode mode = Mode.CSV;
+
+	@Option(names = {"--seed"}, description = "Seed of the random values")
+	private long seed = 1;
+
+	@Override
+	public Void call() throws Exception {
+		if (! directory.isDirectory() && ! directory.mkdirs()) {
+			throw new IOException("Cannot create " + directory);
+		}
+		if (degreeExponent != 0 && degreeExponent <= 1) {
+			throw new IllegalArgumentException("--degree-exponent must be above 1, or 0");
+		}
+		String extension = mode == Mode.TSV ? ".tsv" : ".csv";
+		Random random = new Random(seed);
+
+		List<String> vertexFileNames = new ArrayList<>();
+		for (int f = 0; f < vertexFiles; ++f) {
+			File file = new File(directory, "vertices-" + f + extension);
+			vertexFileNames.add(file.getPath());
+			long from = vertices * f / vertexFiles;
+			long to = vertices * (f + 1) / vertexFiles;
+			try (Writer out = open(file)) {
+				if (f == 0) {
+					out.write(header("id:long:ID", vertexColumns));
+				}
+				for (long id = from; id < to; ++id) {
+					out.write(Long.toString(id));
+					writeValues(out, vertexColumns, random);
+					out.write('\n');
+				}
+			}
+			LOG.info("Wrote vertices {} to {} to {}", from, to - 1, file);
+		}
+
+		EndpointSampler endpoints = new EndpointSampler(vertices, degreeExponent);
+		long edges = Math.round(vertices * edgesPerVertex);
+		List<String> edgeFileNames = new ArrayList<>();
+		for (int f = 0; f < edgeFiles; ++f) {
+			File file = new File(directory, "edges-" + f + extension);
+			edgeFileNames.add(file.getPath());
+			long count = edges * (f + 1) / edgeFiles - edges * f / edgeFiles;
+			try (Writer out = open(file)) {
+				if (f == 0) {
+					out.write(header("from:long:START_ID" + mode.delimiter + "to:long:END_ID" + mode.delimiter + ":TYPE", edgeColumns));
+				}
+				for (long e = 0; e < count; ++e) {
+					out.write(Long.toString(endpoints.next(random)));
+					out.write(mode.delimiter);
+					out.write(Long.toString(endpoints.next(random)));
+					out.write(mode.delimiter);
+					out.write(edgeTypes.get(random.nextInt(edgeTypes.size())));
+					writeValues(out, edgeColumns, random);
+					out.write('\n');
+				}
+			}
+			LOG.info("Wrote {} edges to {}", count, file);
+		}
+
+		File arguments = new File(directory, "import.args");
+		Files.write(arguments.toPath(), Arrays.asList(
+				"--mode=" + mode,
+				"--nodes=" + label + "=" + String.join(",", vertexFileNames),
+				"--relationships=" + String.join(",", edgeFileNames),
+				"--edgeLabels=" + String.join(",", edgeTypes)), StandardCharsets.UTF_8);
+		LOG.info("Load it with the import arguments in @{}", arguments);
+		return null;
+	}
+
+	private Writer open(File file) throws IOException {
+		return new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(file.toPath()), StandardCharsets.UTF_8), BUFFER_SIZE);
+	}
+
+	private String header(String first, List<String> types) {
+		StringBuilder header = new StringBuilder(first);
+		for (int c = 0; c < types.size(); ++c) {
+			header.append(mode.delimiter).append(types.get(c)).append(c).append(':').append(types.get(c));
+		}
+		return header.append('\n').toString();
+	}
+
+	private void writeValues(Writer out, List<String> types, Random random) throws IOException {
+		for (String type : types) {
+			out.write(mode.delimiter);
+			out.write(value(type, random));
+		}
+	}
+
+	private String value(String type, Random random) {
+		switch (type) {
+		case "int":
+			return Integer.toString(random.nextInt());
+		case "long":
+			return Long.toString(random.nextLong());
+		case "short":
+			return Short.toString((short) random.nextInt());
+		case "byte":
+			return Byte.toString((byte) random.nextInt());
+		case "float":
+			return Float.toString(random.nextFloat() * 1000);
+		case "double":
+			return Double.toString(random.nextDouble() * 1000000);
+		case "boolean":
+			return Boolean.toString(random.nextBoolean());
+		case "char":
+			return Character.toString((char) ('a' + random.nextInt(26)));
+		case "datetime":
+			return String.format("%d-%02d-%02dT%02d:%02d:%02dZ", 2000 + random.nextInt(20), 1 + random.nextInt(12),
+					1 + random.nextInt(28), random.nextInt(24), random.nextInt(60), random.nextInt(60));
+		case "uuid":
+			return new UUID(random.nextLong(), random.nextLong()).toString();
+		case "string":
+			String words = WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)] + " " + random.nextInt(1000);
+			return mode == Mode.CSV ? '"' + words + '"' : words;
+		default:
+			throw new IllegalArgumentException("Unknown column type " + type);
+		}
+	}
+
+	/**
+	 * Draws vertex ids with probability proportional to rank^(-1/(exponent-1)), which gives
+	 * degrees following a power law with the exponent. Ranks are scattered over the ids by
+	 * multiplying with a prime larger than the number of vertices, modulo that number.
+	 */
+	static final class EndpointSampler {
+		private static final long PRIME = 2305843009213693951L; // 2^61-1
+
+		private final long vertices;
+		private final double skew;
+		private final BigInteger modulus;
+		private final BigInteger multiplier;
+
+		EndpointSampler(long vertices, double exponent) {
+			this.vertices = vertices;
+			this.skew = exponent == 0 ? 0 : 1 / (exponent - 1);
+			this.modulus = BigInteger.valueOf(vertices);
+			this.multiplier = BigInteger.valueOf(PRIME % vertices);
+		}
+
+		long next(Random random) {
+			double u = random.nextDouble();
+			long rank;
+			if (skew == 0) {
+				return (long) (u * vertices);
+			} else if (skew == 1) {
+				rank = (long) Math.pow(vertices + 1, u) - 1;
+			} else {
+				// Inverse of the cumulative distribution of x^-skew on [1, vertices + 1)
+				double top = Math.pow(vertices + 1, 1 - skew);
+				rank = (long) Math.pow(1 + u * (top - 1), 1 / (1 - skew)) - 1;
+			}
+			rank = Math.min(Math.max(rank, 0), vertices - 1);
+			if (vertices <= Integer.MAX_VALUE) {
+				return rank * multiplier.longValue() % vertices;
+			}
+			return BigInteger.valueOf(rank).multiply(multiplier).mod(modulus).longValue();
+		}
+	}
+
+	public static void main(String[] args) {
+		CommandLine.call(new DatasetGenerator(), args);
+	}
+}
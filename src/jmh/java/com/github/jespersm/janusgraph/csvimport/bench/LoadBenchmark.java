@@ -0,0 +1,225 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.github.jespersm.janusgraph.csvimport.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.jespersm.janusgraph.csvimport.Import;
+import com.github.jespersm.janusgraph.csvimport.metrics.ImportMetrics;
+
+import picocli.CommandLine;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
+import picocli.CommandLine.Parameters;
+
+/**
+ * Runs {@link Import} in this JVM against a fresh local graph, and writes the wall time,
+ * rows per second of each phase, peak heap and garbage collection time to a JSON report.
+ *
+ * The import arguments follow "--", e.g. "-- @dataset/import.args --threads=8", without
+ * --config, which is written for each run. Several runs can be made in a row; the first
+ * usually includes JIT warm-up.
+ */
+@Command(name = "load-benchmark", description = "Time imports against a local graph")
+public class LoadBenchmark implements Callable<Void> {
+	private static final Logger LOG = LoggerFactory.getLogger(LoadBenchmark.class);
+	private static final long HEAP_SAMPLE_MILLIS = 50;
+
+	static enum Backend {
+		inmemory, berkeleyje
+	}
+
+	@Option(names = {"--backend"}, description = "Storage backend of the graph. Valid values: ${COMPLETION-CANDIDATES} (default inmemory)")
+	private Backend backend = Backend.inmemory;
+
+	@Option(names = {"--set"}, description = "Additional graph configuration, e.g. --set ids.block-size=1000000")
+	private Map<String, String> settings = new LinkedHashMap<>();
+
+	@Option(names = {"--work-dir"}, description = "Directory for the graph configuration and BerkeleyJE files (default a temporary directory)")
+	private File workDirectory = null;
+
+	@Option(names = {"--runs"}, description = "Number of imports to run (default 1)")
+	private int runs = 1;
+
+	@Option(names = {"--report"}, required = true, description = "JSON file to write the report to")
+	private File report;
+
+	@Option(names = {"--name"}, description = "Name of the run in the report, e.g. a commit or setting being compared")
+	private String name = "";
+
+	@Parameters(description = "Arguments of the import")
+	private List<String> importArguments = new ArrayList<>();
+
+	@Override
+	public Void call() throws Exception {
+		Instant started = Instant.now();
+		if (workDirectory == null) {
+			workDirectory = Files.createTempDirectory("load-benchmark").toFile();
+		}
+		List<String> results = new ArrayList<>();
+		for (int run = 1; run <= runs; ++run) {
+			LOG.info("Starting run {} of {}", run, runs);
+			results.add(runImport(new File(workDirectory, "run-" + run)));
+		}
+
+		StringBuilder json = new StringBuilder("{\n");
+		json.append("  \"name\": ").append(quote(name)).append(",\n");
+		json.append("  \"started\": ").append(quote(started.toString())).append(",\n");
+		json.append("  \"java\": ").append(quote(System.getProperty("java.version"))).append(",\n");
+		json.append("  \"processors\": ").append(Runtime.getRuntime().availableProcessors()).append(",\n");
+		json.append("  \"maxHeapBytes\": ").append(Runtime.getRuntime().maxMemory()).append(",\n");
+		json.append("  \"backend\": ").append(quote(backend.name())).append(",\n");
+		json.append("  \"settings\": {");
+		String separator = "";
+		for (Map.Entry<String, String> setting : settings.entrySet()) {
+			json.append(separator).append(quote(setting.getKey())).append(": ").append(quote(setting.getValue()));
+			separator = ", ";
+		}
+		json.append("},\n");
+		json.append("  \"arguments\": [");
+		separator = "";
+		for (String argument : importArguments) {
+			json.append(separator).append(quote(argument));
+			separator = ", ";
+		}
+		json.append("],\n");
+		json.append("  \"runs\": [\n    ").append(String.join(",\n    ", results)).append("\n  ]\n}\n");
+		Files.write(report.toPath(), json.toString().getBytes(StandardCharsets.UTF_8));
+		LOG.info("Wrote report to {}", report);
+		return null;
+	}
+
+	private String runImport(File directory) throws Exception {
+		if (! directory.mkdirs()) {
+			throw new IOException("Cannot create " + directory);
+		}
+		File config = writeConfig(directory);
+		List<String> arguments = new ArrayList<>(importArguments);
+		arguments.add("--config=" + config.getPath());
+		Import importer = new Import();
+		new CommandLine(importer).setCaseInsensitiveEnumValuesAllowed(true).parse(arguments.toArray(new String[0]));
+
+		System.gc();
+		MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+		AtomicLong peakHeap = new AtomicLong(memory.getHeapMemoryUsage().getUsed());
+		Thread sampler = new Thread(() -> {
+			while (! Thread.currentThread().isInterrupted()) {
+				peakHeap.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max);
+				try {
+					Thread.sleep(HEAP_SAMPLE_MILLIS);
+				} catch (InterruptedException e) {
+					return;
+				}
+			}
+		}, "heap-sampler");
+		sampler.setDaemon(true);
+		long gcCount = -gcCount();
+		long gcMillis = -gcMillis();
+		long started = System.nanoTime();
+		sampler.start();
+		try {
+			importer.call();
+		} finally {
+			sampler.interrupt();
+			sampler.join();
+		}
+		long wallNanos = System.nanoTime() - started;
+		gcCount += gcCount();
+		gcMillis += gcMillis();
+
+		StringBuilder json = new StringBuilder("{");
+		json.append("\"wallSeconds\": ").append(wallNanos / 1e9);
+		json.append(", \"peakHeapBytes\": ").append(peakHeap.get());
+		json.append(", \"gcCount\": ").append(gcCount);
+		json.append(", \"gcSeconds\": ").append(gcMillis / 1e3);
+		json.append(", \"phases\": [");
+		String separator = "";
+		for (ImportMetrics.Phase phase : importer.getPhases()) {
+			json.append(separator).append("{\"name\": ").append(quote(phase.getName()))
+				.append(", \"rows\": ").append(phase.getRows())
+				.append(", \"seconds\": ").append(phase.getNanos() / 1e9)
+				.append(", \"rowsPerSecond\": ").append(Math.round(phase.getRowRate())).append('}');
+			separator = ", ";
+		}
+		json.append("]}");
+		LOG.info("Run took {} s, peak heap {} MB, {} collections taking {} s", wallNanos / 1e9, peakHeap.get() >> 20, gcCount, gcMillis / 1e3);
+		return json.toString();
+	}
+
+	private File writeConfig(File directory) throws IOException {
+		Map<String, String> properties = new LinkedHashMap<>();
+		properties.put("storage.backend", backend.name());
+		if (backend == Backend.berkeleyje) {
+			properties.put("storage.directory", new File(directory, "graph").getAbsolutePath());
+		}
+		properties.put("storage.batch-loading", "true");
+		properties.put("ids.block-size", "100000");
+		properties.putAll(settings);
+
+		List<String> lines = new ArrayList<>();
+		properties.forEach((key, value) -> lines.add(key + "=" + value));
+		File config = new File(directory, "graph.properties");
+		Files.write(config.toPath(), lines, StandardCharsets.UTF_8);
+		return config;
+	}
+
+	private static long gcCount() {
+		long count = 0;
+		for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+			count += Math.max(collector.getCollectionCount(), 0);
+		}
+		return count;
+	}
+
+	private static long gcMillis() {
+		long millis = 0;
+		for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+			millis += Math.max(collector.getCollectionTime(), 0);
+		}
+		return millis;
+	}
+
+	private static String quote(String value) {
+		StringBuilder quoted = new StringBuilder("\"");
+		for (char c : value.toCharArray()) {
+			if (c == '"' || c == '\\') {
+				quoted.append('\\').append(c);
+			} else if (c < ' ') {
+				quoted.append(String.format("\\u%04x", (int) c));
+			} else {
+				quoted.append(c);
+			}
+		}
+		return quoted.append('"').toString();
+	}
+
+	public static void main(String[] args) {
+		CommandLine.call(new LoadBenchmark(), args);
+	}
+}
@@ -0,0 +1,154 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.github.jespersm.janusgraph.csvimport.idmap;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Id map puts from concurrent writer threads, as when loading vertices, and lookups from
+ * concurrent threads in a frozen map, as when loading edges.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+public class IdMapBenchmark {
+	private static final int SIZE = 1 << 19;
+
+	@State(Scope.Benchmark)
+	public static class Keys {
+		/**
+		 * The map made by {@link IdMapFactory} for long ids, string ids, fingerprinted string
+		 * ids, or long ids spilled to memory mapped files.
+		 */
+		@Param({"long", "object", "fingerprint", "mapped"})
+		String kind;
+
+		Object[] keys;
+		File scratchDirectory;
+
+		@Setup(Level.Trial)
+		public void setup() throws IOException {
+			boolean integral = kind.equals("long") || kind.equals("mapped");
+			keys = new Object[2 * SIZE];
+			for (int i = 0; i < keys.length; ++i) {
+				keys[i] = integral ? (Object) Long.valueOf(i) : "node-" + i;
+			}
+			scratchDirectory = Files.createTempDirectory("idmap").toFile();
+		}
+
+		IdMap create() throws IOException {
+			IdMapFactory factory = new IdMapFactory().withExpectedSize(SIZE);
+			switch (kind) {
+			case "mapped":
+				// Spill a few times while filling
+				factory.withScratchDirectory(scratchDirectory, SIZE / 4 * 24L);
+				return factory.create(Collections.singleton(Long.class));
+			case "fingerprint":
+				factory.withFingerprints(true);
+				return factory.create(Collections.singleton(String.class));
+			case "object":
+				return factory.create(Collections.singleton(String.class));
+			default:
+				return factory.create(Collections.singleton(Long.class));
+			}
+		}
+
+		@TearDown(Level.Trial)
+		public void tearDown() {
+			File[] files = scratchDirectory.listFiles();
+			if (files != null) {
+				for (File file : files) {
+					file.delete();
+				}
+			}
+			scratchDirectory.delete();
+		}
+	}
+
+	/**
+	 * A map filled by the benchmark threads, replaced on each iteration so it doesn't fill up.
+	 */
+	@State(Scope.Benchmark)
+	public static class Filling {
+		IdMap map;
+		final AtomicInteger next = new AtomicInteger();
+
+		@Setup(Level.Iteration)
+		public void setup(Keys keys) throws IOException {
+			map = keys.create();
+			next.set(0);
+		}
+
+		@TearDown(Level.Iteration)
+		public void tearDown() throws IOException {
+			map.close();
+		}
+	}
+
+	/**
+	 * A frozen map of the first half of the keys, so about half the lookups miss.
+	 */
+	@State(Scope.Benchmark)
+	public static class Frozen {
+		IdMap map;
+
+		@Setup(Level.Trial)
+		public void setup(Keys keys) throws IOException {
+			map = keys.create();
+			for (int i = 0; i < SIZE; ++i) {
+				map.putIfAbsent(keys.keys[i], i + 1);
+			}
+			map.freeze();
+		}
+
+		@TearDown(Level.Trial)
+		public void tearDown() throws IOException {
+			map.close();
+		}
+	}
+
+	@Benchmark
+	public boolean putIfAbsent(Keys keys, Filling filling) {
+		int i = filling.next.getAndIncrement() & (keys.keys.length - 1);
+		return filling.map.putIfAbsent(keys.keys[i], i + 1);
+	}
+
+	@Benchmark
+	public long get(Keys keys, Frozen frozen) {
+		return frozen.map.get(keys.keys[ThreadLocalRandom.current().nextInt(keys.keys.length)]);
+	}
+}
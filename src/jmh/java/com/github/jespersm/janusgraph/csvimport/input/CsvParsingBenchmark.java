@@ -0,0 +1,99 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.github.jespersm.janusgraph.csvimport.input;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Tokenizing a whole file, decoding every field, in each dialect. The file is read once
+ * before measuring, so it is served from the page cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CsvParsingBenchmark {
+	private static final int ROWS = 100000;
+
+	/**
+	 * CSV with bare fields, CSV with quoted strings, or TSV.
+	 */
+	@Param({"CSV", "CSV_QUOTED", "TSV"})
+	private String format;
+
+	private CsvDialect dialect;
+	private FileChunk chunk;
+	private File file;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		dialect = format.equals("TSV") ? CsvDialect.TSV : CsvDialect.CSV;
+		char delimiter = (char) dialect.getDelimiter();
+		String quote = format.equals("CSV_QUOTED") ? "\"" : "";
+
+		file = File.createTempFile("parsing", ".csv");
+		Random random = new Random(42);
+		try (BufferedWriter writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+			writer.write("id:long:ID" + delimiter + "name:string" + delimiter + "score:double" + delimiter + "ref:uuid\n");
+			for (int i = 0; i < ROWS; ++i) {
+				writer.write(i + "" + delimiter + quote + "Name number " + random.nextInt(1000000) + quote + delimiter
+						+ random.nextDouble() + delimiter + new UUID(random.nextLong(), random.nextLong()) + "\n");
+			}
+		}
+		chunk = new FileChunk(file, 0, file.length(), Compression.NONE, true);
+		tokenize();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		file.delete();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(ROWS)
+	public long tokenize() throws IOException {
+		long chars = 0;
+		try (CsvTokenizer tokenizer = new CsvTokenizer(chunk, dialect)) {
+			for (CsvRow row = tokenizer.next(); row != null; row = tokenizer.next()) {
+				for (int i = 0; i < row.size(); ++i) {
+					chars += row.get(i).length();
+				}
+			}
+		}
+		return chars;
+	}
+}
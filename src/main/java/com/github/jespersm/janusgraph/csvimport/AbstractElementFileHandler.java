@@ -12,33 +12,68 @@
 
 package com.github.jespersm.janusgraph.csvimport;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
+import java.io.UncheckedIOException;
 import java.time.ZonedDateTime;
+import java.util.ArrayList;
 import java.util.Date;
-import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Function;
 
-import org.apache.commons.csv.CSVFormat;
-import org.apache.commons.csv.CSVParser;
+import org.apache.commons.lang3.time.StopWatch;
+import org.janusgraph.core.JanusGraph;
+import org.janusgraph.core.JanusGraphTransaction;
+import org.janusgraph.core.Transaction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-public class AbstractElementFileHandler {
+import com.github.jespersm.janusgraph.csvimport.checkpoint.CheckpointLog;
+import com.github.jespersm.janusgraph.csvimport.checkpoint.ChunkProgress;
+import com.github.jespersm.janusgraph.csvimport.commit.CommitPolicy;
+import com.github.jespersm.janusgraph.csvimport.commit.RowCountCommitPolicy;
+import com.github.jespersm.janusgraph.csvimport.convert.CharParsers;
+import com.github.jespersm.janusgraph.csvimport.idmap.IdMap;
+import com.github.jespersm.janusgraph.csvimport.input.Compression;
+import com.github.jespersm.janusgraph.csvimport.input.CsvChunker;
+import com.github.jespersm.janusgraph.csvimport.input.CsvDialect;
+import com.github.jespersm.janusgraph.csvimport.input.CsvRow;
+import com.github.jespersm.janusgraph.csvimport.input.CsvTokenizer;
+import com.github.jespersm.janusgraph.csvimport.input.FileChunk;
+import com.github.jespersm.janusgraph.csvimport.metrics.HandlerMetrics;
+import com.github.jespersm.janusgraph.csvimport.prescan.FileStatistics;
 
-	protected Map<Object, Object> keyMap;
-	protected final Deque<File> files = new LinkedList<File>();
+public abstract class AbstractElementFileHandler implements BatchWriter {
+	private static final Logger LOG = LoggerFactory.getLogger(AbstractElementFileHandler.class);
+	private static final int PROGRESS_INTERVAL = 10000;
+
+	protected IdMap keyMap;
+	protected final List<File> files = new LinkedList<File>();
 	protected ColumnHandler[] columns = null;
-	protected CSVParser currentParser = null;
-	protected File currentFile = null;
+	protected CsvDialect dialect = CsvDialect.CSV;
+	protected boolean labelProperty = true;
+	protected final long limitRows;
 
-	public AbstractElementFileHandler(String files, Map<Object, Object> keyMap) throws FileNotFoundException {
-		this.keyMap = keyMap;
+	private final AtomicLong rowsClaimed = new AtomicLong();
+	protected final AtomicLong elementsCreated = new AtomicLong();
+	private final AtomicInteger pendingWork = new AtomicInteger();
+	private final AtomicInteger failedChunks = new AtomicInteger();
+	protected final StopWatch watch = new StopWatch();
+	protected volatile boolean aborted = false;
+	private CommitPolicy commitPolicy = new RowCountCommitPolicy(10000);
+	private CheckpointLog checkpoints = null;
+	protected HandlerMetrics metrics = HandlerMetrics.detached();
+
+	public AbstractElementFileHandler(String files, long limitRows) throws FileNotFoundException {
+		this.limitRows = limitRows;
 		for (String s : files.split(",")) {
 			File f = new File(s);
 			if (! f.exists() || ! f.isFile()) {
@@ -48,6 +83,256 @@ public class AbstractElementFileHandler {
 		}
 	}
 
+	public HandlerMetrics getMetrics() {
+		return metrics;
+	}
+
+	public void setMetrics(HandlerMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * @return the total size of the files
+	 */
+	public long getInputBytes() {
+		long bytes = 0;
+		for (File file : files) {
+			bytes += file.length();
+		}
+		return bytes;
+	}
+
+	public void setDialect(CsvDialect dialect) {
+		this.dialect = dialect;
+	}
+
+	/**
+	 * Copy the label of each element into a _label property. Must be set before the headers are parsed.
+	 */
+	public void setLabelProperty(boolean labelProperty) {
+		this.labelProperty = labelProperty;
+	}
+
+	public void setKeyMap(IdMap keyMap) {
+		this.keyMap = keyMap;
+	}
+
+	public CommitPolicy getCommitPolicy() {
+		return commitPolicy;
+	}
+
+	public void setCommitPolicy(CommitPolicy commitPolicy) {
+		this.commitPolicy = commitPolicy;
+	}
+
+	public void setCheckpoints(CheckpointLog checkpoints) {
+		this.checkpoints = checkpoints;
+	}
+
+	protected boolean isCheckpointing() {
+		return checkpoints != null;
+	}
+
+	/**
+	 * Convert a record into the values to write, one per column.
+	 *
+	 * @return the converted row, or null if the record should be skipped
+	 */
+	protected abstract Object[] convert(CsvRow record, FileChunk chunk, long recordNumber);
+
+	/**
+	 * Read and convert the records of one chunk, as returned from {@link #split(long, boolean)},
+	 * passing them on in batches. May be called concurrently for different chunks.
+	 */
+	public void readChunk(FileChunk chunk, BatchSink writers) throws IOException, InterruptedException {
+		ChunkProgress progress = checkpoints != null ? checkpoints.progress(chunk) : ChunkProgress.NONE;
+		if (progress.isDone()) {
+			LOG.info("Skipping {}, which was checkpointed as done", chunk);
+			metrics.bytesRead(chunk.size());
+			return;
+		}
+		RowBatch batch = new RowBatch(this, chunk);
+		long batchAfter = 0;
+		long lastRecord = 0;
+		boolean complete = true;
+		long parseNanos = 0;
+		long convertNanos = 0;
+		long bytesReported = 0;
+		try (CsvTokenizer tokenizer = openChunk(chunk)) {
+			long mark = System.nanoTime();
+			for (CsvRow record = tokenizer.next(); record != null; record = tokenizer.next()) {
+				long now = System.nanoTime();
+				parseNanos += now - mark;
+				mark = now;
+				if (aborted) {
+					complete = false;
+					break;
+				}
+				long recordNumber = record.getRecordNumber();
+				if (! progress.isCommitted(recordNumber)) {
+					Object[] row = convert(record, chunk, recordNumber);
+					if (row != null) {
+						if (! claimRow()) {
+							complete = false;
+							break;
+						}
+						batch.add(row);
+					}
+				}
+				lastRecord = recordNumber;
+				now = System.nanoTime();
+				convertNanos += now - mark;
+				if (batch.size() > 0 && commitPolicy.isFull(batch.size(), batch.getEstimatedBytes())) {
+					batch.setRecords(batchAfter, lastRecord, false);
+					writers.submit(batch);
+					batch = new RowBatch(this, chunk);
+					batchAfter = lastRecord;
+					metrics.parsed(parseNanos, convertNanos);
+					parseNanos = convertNanos = 0;
+					metrics.bytesRead(tokenizer.getBytesRead() - bytesReported);
+					bytesReported = tokenizer.getBytesRead();
+					now = System.nanoTime();
+				}
+				mark = now;
+			}
+			metrics.parsed(parseNanos, convertNanos);
+			metrics.bytesRead(tokenizer.getBytesRead() - bytesReported);
+		}
+		batch.setRecords(batchAfter, lastRecord, complete);
+		if (batch.size() > 0) {
+			writers.submit(batch);
+		} else if (complete) {
+			// The records after the last batch were all skipped
+			checkpoint(batch, null, null);
+		}
+	}
+
+	/**
+	 * Log the number of elements created so far, and the time spent
+	 */
+	public abstract void logProgress();
+
+	/**
+	 * Divide the files into chunks which can be inserted independently. The first file
+	 * starts after its header line, the others have no header. Compressed files can't be
+	 * divided, so each is a single chunk, decompressed while it is parsed.
+	 *
+	 * @param chunkSize Approximate size of each chunk in bytes, or 0 for one chunk per file
+	 * @param multilineFields Whether quoted fields may contain line breaks
+	 */
+	public List<FileChunk> split(long chunkSize, boolean multilineFields) throws IOException {
+		List<FileChunk> chunks = new ArrayList<>();
+		boolean isFirst = true;
+		for (File file : files) {
+			Compression compression = Compression.detect(file);
+			if (compression != Compression.NONE) {
+				chunks.add(new FileChunk(file, 0, file.length(), compression, isFirst));
+			} else {
+				long start = isFirst ? CsvChunker.headerEnd(file, dialect.isQuoted()) : 0;
+				chunks.addAll(CsvChunker.split(file, start, chunkSize, multilineFields && dialect.isQuoted()));
+			}
+			isFirst = false;
+		}
+		if (checkpoints != null) {
+			checkpoints.verify(chunks);
+		}
+		pendingWork.set(chunks.size());
+		watch.reset();
+		watch.start();
+		return chunks;
+	}
+
+	/**
+	 * Count a batch in flight, so the handler isn't reported done before it is written.
+	 */
+	public void workAdded() {
+		pendingWork.incrementAndGet();
+	}
+
+	/**
+	 * Called when a chunk is read, and when a batch is written. Logs when nothing is left.
+	 */
+	public void workDone() {
+		if (pendingWork.decrementAndGet() == 0) {
+			logProgress();
+			LOG.info("Done writing {}", getDescription());
+		}
+	}
+
+	/**
+	 * Count elements written, logging progress every {@value #PROGRESS_INTERVAL} elements.
+	 */
+	protected void addCreated(int created) {
+		metrics.rowsWritten(created);
+		long before = elementsCreated.getAndAdd(created);
+		if (before / PROGRESS_INTERVAL != (before + created) / PROGRESS_INTERVAL) {
+			logProgress();
+		}
+	}
+
+	/**
+	 * Stop reading more records, e.g. because a batch couldn't be written.
+	 */
+	public void abort() {
+		aborted = true;
+	}
+
+	/**
+	 * @return whether reading was stopped, by {@link #abort()} or by a row which can't be written
+	 */
+	public boolean isAborted() {
+		return aborted;
+	}
+
+	/**
+	 * Record that a chunk couldn't be read to the end, and stop reading the others.
+	 */
+	public void chunkFailed() {
+		failedChunks.incrementAndGet();
+		abort();
+	}
+
+	/**
+	 * @return the number of chunks which couldn't be read to the end
+	 */
+	public int getFailedChunks() {
+		return failedChunks.get();
+	}
+
+	/**
+	 * Reserve a row under the --limit-rows budget, which is shared between all chunks.
+	 */
+	protected boolean claimRow() {
+		return ! aborted && rowsClaimed.incrementAndGet() <= limitRows;
+	}
+
+	/**
+	 * Record that a batch was committed, if checkpointing.
+	 *
+	 * @param csvIds The ids of the vertices created by the batch, or null
+	 * @param vertexIds The vertex ids, in the same order
+	 */
+	protected void checkpoint(RowBatch batch, List<Object> csvIds, long[] vertexIds) {
+		if (checkpoints == null) return;
+		try {
+			checkpoints.committed(batch.getChunk(), batch.getAfterRecord(), batch.getLastRecord(), batch.endsChunk(), csvIds, vertexIds);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Error checkpointing " + batch, e);
+		}
+	}
+
+	protected JanusGraphTransaction newTransaction(JanusGraph graph) {
+		return graph.newTransaction();
+	}
+
+	protected void commit(Transaction graph) {
+		long started = System.nanoTime();
+		graph.tx().commit();
+		metrics.committed(System.nanoTime() - started);
+		graph.tx().close();
+		graph.close();
+	}
+
 	protected ColumnHandler<?> makeColumnHandler(String header) {
 		
 		String[] parts = header.split(":");
@@ -71,25 +356,25 @@ public class AbstractElementFileHandler {
 		}
 		switch (typeName) {
 		case "int":
-			return DefaultColumnHandler.of(fieldPropertyName, tag, Integer.class, Integer::valueOf);
+			return DefaultColumnHandler.of(fieldPropertyName, tag, Integer.class, CharParsers::toInteger);
 		case "long":
-			return DefaultColumnHandler.of(fieldPropertyName, tag, Long.class, Long::valueOf);
+			return DefaultColumnHandler.of(fieldPropertyName, tag, Long.class, CharParsers::toLong);
 		case "float":
-			return DefaultColumnHandler.of(fieldPropertyName, tag, Float.class, Float::valueOf);
+			return DefaultColumnHandler.of(fieldPropertyName, tag, Float.class, s -> Float.valueOf(s.toString()));
 		case "double":
-			return DefaultColumnHandler.of(fieldPropertyName, tag, Double.class, Double::valueOf);
+			return DefaultColumnHandler.of(fieldPropertyName, tag, Double.class, CharParsers::toDouble);
 		case "boolean":
-			return DefaultColumnHandler.of(fieldPropertyName, tag, Boolean.class, Boolean::valueOf);
+			return DefaultColumnHandler.of(fieldPropertyName, tag, Boolean.class, CharParsers::toBoolean);
 		case "byte":
-			return DefaultColumnHandler.of(fieldPropertyName, tag, Byte.class, Byte::valueOf);
+			return DefaultColumnHandler.of(fieldPropertyName, tag, Byte.class, CharParsers::toByte);
 		case "short":
-			return DefaultColumnHandler.of(fieldPropertyName, tag, Short.class, Short::valueOf);
+			return DefaultColumnHandler.of(fieldPropertyName, tag, Short.class, CharParsers::toShort);
 		case "char":
 			return DefaultColumnHandler.of(fieldPropertyName, tag, Character.class, s -> s.charAt(0));
 		case "datetime":
 			return DefaultColumnHandler.of(fieldPropertyName, tag, Date.class, s -> Date.from(ZonedDateTime.parse(s).toInstant()));
 		case "uuid":
-			return DefaultColumnHandler.of(fieldPropertyName, tag, UUID.class, UUID::fromString);
+			return DefaultColumnHandler.of(fieldPropertyName, tag, UUID.class, CharParsers::toUUID);
 		case "date":
 		case "localtime":
 		case "time":
@@ -100,35 +385,90 @@ public class AbstractElementFileHandler {
 		}
 	}
 
-	public void setupCSVParser(boolean isFirst) throws IOException {
-		if (this.currentParser != null) {
-			this.currentParser.close();
-			this.currentParser = null;
+	/**
+	 * Read the header line of the first file.
+	 *
+	 * @return the column index of each header, in order
+	 */
+	protected Map<String, Integer> readHeader() throws IOException {
+		File file = files.get(0);
+		Compression compression = Compression.detect(file);
+		FileChunk header = compression != Compression.NONE
+				? new FileChunk(file, 0, file.length(), compression, false)
+				: new FileChunk(file, 0, CsvChunker.headerEnd(file, dialect.isQuoted()));
+		try (CsvTokenizer tokenizer = new CsvTokenizer(header, dialect)) {
+			CsvRow row = tokenizer.next();
+			if (row == null) {
+				throw new IOException("No header line in " + file);
+			}
+			Map<String, Integer> headers = new LinkedHashMap<>();
+			for (int i = 0; i < row.size(); ++i) {
+				headers.put(row.get(i).toString(), i);
+			}
+			return headers;
 		}
-		File file = files.removeFirst();
-		CSVFormat format = isFirst ? CSVFormat.DEFAULT.withFirstRecordAsHeader() : CSVFormat.DEFAULT;
-		BufferedReader mappingReader = null;
-	    CSVParser mappingParser = null;
-		try {
-			mappingReader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8);
-	        mappingParser = new CSVParser(mappingReader, format);
-			// Transfer ownership
-			this.currentParser = mappingParser;
-			this.currentFile = file;
-			mappingParser = null;
-			mappingReader = null;
-		}  finally {
-			if (mappingParser != null) {
-				mappingParser.close();
-			} else if (mappingReader != null) {
-				mappingReader.close();
+	}
+
+	/**
+	 * Make the column handlers from the header line, without touching the schema.
+	 */
+	public void readColumns() throws IOException {
+		Map<String, Integer> headers = readHeader();
+		int maxColumn = headers.values().stream().mapToInt(Integer::intValue).max().getAsInt();
+		columns = new ColumnHandler[maxColumn+1];
+		headers.forEach((label, index) -> columns[index] = makeColumnHandler(label));
+	}
+
+	public ColumnHandler<?>[] getColumns() {
+		return columns;
+	}
+
+	/**
+	 * Read and convert the records of one chunk without writing them, counting rows, empty
+	 * values, values which fail to convert, and the values of the TYPE column.
+	 */
+	public void scanChunk(FileChunk chunk, FileStatistics statistics) throws IOException {
+		long rows = 0;
+		long[] nulls = new long[columns.length];
+		long[] failures = new long[columns.length];
+		String[] firstFailures = new String[columns.length];
+		Map<String, Long> types = new HashMap<>();
+		try (CsvTokenizer tokenizer = openChunk(chunk)) {
+			for (CsvRow record = tokenizer.next(); record != null; record = tokenizer.next()) {
+				++rows;
+				int size = Math.min(record.size(), columns.length);
+				for (int c = 0; c < columns.length; ++c) {
+					ColumnHandler<?> handler = columns[c];
+					if (handler == null || handler.getTag() == ColumnHandler.Tag.IGNORE) continue;
+					CharSequence value = c < size ? emptyToNull(record.get(c)) : null;
+					if (value == null) {
+						++nulls[c];
+					} else if (handler.getTag() == ColumnHandler.Tag.TYPE) {
+						types.merge(value.toString(), 1L, Long::sum);
+					} else {
+						try {
+							handler.convert(value);
+						} catch (RuntimeException e) {
+							if (failures[c]++ == 0) {
+								firstFailures[c] = "'" + value + "' in record " + record.getRecordNumber() + " of " + chunk + ": " + e;
+							}
+						}
+					}
+				}
 			}
 		}
+		statistics.addChunk(chunk, rows, nulls, failures, firstFailures, types);
+	}
+
+	protected CsvTokenizer openChunk(FileChunk chunk) throws IOException {
+		return new CsvTokenizer(chunk, dialect);
+	}
+
+	protected static CharSequence emptyToNull(CharSequence field) {
+		return field.length() == 0 ? null : field;
 	}
 
 	public void close() throws IOException {
-		if (currentParser != null) currentParser.close();
-		currentParser = null;
 	}
 
 }
\ No newline at end of file
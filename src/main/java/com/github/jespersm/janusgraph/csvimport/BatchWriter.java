@@ -0,0 +1,53 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package com.github.jespersm.janusgraph.csvimport;
+
+import org.janusgraph.core.JanusGraph;
+
+import com.github.jespersm.janusgraph.csvimport.commit.CommitPolicy;
+import com.github.jespersm.janusgraph.csvimport.metrics.HandlerMetrics;
+
+/**
+ * What a {@link WriterPool} needs of the handler of a {@link RowBatch} to write it.
+ */
+public interface BatchWriter {
+	/**
+	 * @return a description of what's being imported, for logging
+	 */
+	String getDescription();
+
+	/**
+	 * Write a batch of converted rows in a transaction of its own. Called from writer threads.
+	 */
+	void writeBatch(JanusGraph graph, RowBatch batch);
+
+	CommitPolicy getCommitPolicy();
+
+	HandlerMetrics getMetrics();
+
+	/**
+	 * Count a batch in flight, so the handler isn't reported done before it is written.
+	 */
+	void workAdded();
+
+	/**
+	 * Called when a batch is written. Logs when nothing is left.
+	 */
+	void workDone();
+
+	/**
+	 * Stop reading more records, e.g. because a batch couldn't be written.
+	 */
+	void abort();
+}
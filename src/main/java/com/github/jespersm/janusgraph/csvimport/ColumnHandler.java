@@ -16,7 +16,7 @@ public interface ColumnHandler<T> {
 	enum Tag { ID, INDEX, UNIQUE, START_ID, END_ID, TYPE, IGNORE, DATA }
 	
 	Class<T> getDatatype();
-	T convert(String raw);
+	T convert(CharSequence raw);
 	String getName();
 	Tag getTag();
 }
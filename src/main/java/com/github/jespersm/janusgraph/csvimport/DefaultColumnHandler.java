@@ -12,27 +12,27 @@
 
 package com.github.jespersm.janusgraph.csvimport;
 
-import java.util.function.Function;
+import com.github.jespersm.janusgraph.csvimport.convert.CharConverter;
 
 final class DefaultColumnHandler<T> implements ColumnHandler<T> {
 	private final String fieldPropertyName;
 	private final Tag tag;
 	private final Class<T> dataType;
-	private final Function<String, T> mapper;
+	private final CharConverter<T> mapper;
 
-	public DefaultColumnHandler(String fieldPropertyName, Tag tag, Class<T> dataType, Function<String, T> mapper) {
+	public DefaultColumnHandler(String fieldPropertyName, Tag tag, Class<T> dataType, CharConverter<T> mapper) {
 		this.fieldPropertyName = fieldPropertyName;
 		this.tag = tag;
 		this.dataType = dataType;
 		this.mapper = mapper;
 	}
 
-	public static <R> DefaultColumnHandler<R> of(String fieldPropertyName, Tag tag, Class<R> dataType, Function<String, R> mapper) {
+	public static <R> DefaultColumnHandler<R> of(String fieldPropertyName, Tag tag, Class<R> dataType, CharConverter<R> mapper) {
 		return new DefaultColumnHandler<R>(fieldPropertyName, tag, dataType, mapper);
 	}
 
 	public static DefaultColumnHandler<String> of(String fieldPropertyName, Tag tag) {
-		return new DefaultColumnHandler<String>(fieldPropertyName, tag, String.class, Function.identity());
+		return new DefaultColumnHandler<String>(fieldPropertyName, tag, String.class, CharSequence::toString);
 	}
 
 	@Override
@@ -41,8 +41,8 @@ final class DefaultColumnHandler<T> implements ColumnHandler<T> {
 	}
 
 	@Override
-	public T convert(String raw) {
-		return raw == null ? null : mapper.apply(raw);
+	public T convert(CharSequence raw) {
+		return raw == null ? null : mapper.convert(raw);
 	}
 
 	public String getName() {
@@ -15,40 +15,51 @@ package com.github.jespersm.janusgraph.csvimport;
 import java.io.Closeable;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
-import org.apache.commons.csv.CSVRecord;
-import org.apache.commons.lang3.time.StopWatch;
-import org.apache.tinkerpop.gremlin.structure.Edge;
 import org.apache.tinkerpop.gremlin.structure.Vertex;
+import org.janusgraph.core.EdgeLabel;
 import org.janusgraph.core.JanusGraph;
-import org.janusgraph.core.Transaction;
+import org.janusgraph.core.JanusGraphEdge;
+import org.janusgraph.core.JanusGraphTransaction;
+import org.janusgraph.core.JanusGraphVertex;
+import org.janusgraph.graphdb.transaction.StandardJanusGraphTx;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.github.jespersm.janusgraph.csvimport.ColumnHandler.Tag;
+import com.github.jespersm.janusgraph.csvimport.idmap.IdMap;
+import com.github.jespersm.janusgraph.csvimport.input.CsvRow;
+import com.github.jespersm.janusgraph.csvimport.input.CsvTokenizer;
+import com.github.jespersm.janusgraph.csvimport.input.FileChunk;
+import com.github.jespersm.janusgraph.csvimport.prescan.DegreeCount;
 import com.github.jespersm.janusgraph.csvimport.schema.SchemaBuilder;
-import com.google.common.base.Strings;
 
 public class EdgeFileHandler extends AbstractElementFileHandler implements Closeable, AutoCloseable {
 	private static final Logger LOG = LoggerFactory.getLogger(EdgeFileHandler.class);
-	private int limitRows;
 	private boolean ignoreMissingNodes;
+	private boolean trustedIds;
+	private int startColumn = -1;
+	private int endColumn = -1;
+	private int typeColumn = -1;
+	private WritePlan plan;
+	private Set<Object> hubs = null;
+	private boolean hubEdges = false;
 	
-	public EdgeFileHandler(String files, Map<Object, Object> keyMap, int limitRows, boolean ignoreMissingNodes) throws FileNotFoundException {
-		super(files, keyMap);
-		this.limitRows = limitRows;
+	public EdgeFileHandler(String files, int limitRows, boolean ignoreMissingNodes, boolean trustedIds) throws FileNotFoundException {
+		super(files, limitRows);
 		this.ignoreMissingNodes = ignoreMissingNodes;
+		this.trustedIds = trustedIds;
 	}
 
-	public void insertContent(JanusGraph mainGraph) {
-		int edgesCreated = 0;
-		int startColumn = findTag(ColumnHandler.Tag.START_ID);
-		int endColumn = findTag(ColumnHandler.Tag.END_ID);
-		int typeColumn = findTag(ColumnHandler.Tag.TYPE);
-
+	@Override
+	protected Object[] convert(CsvRow record, FileChunk chunk, long recordNumber) {
 		if (startColumn == -1) {
 			throw new RuntimeException("No start-column for relationship");
 		}
@@ -58,98 +69,196 @@ public class EdgeFileHandler extends AbstractElementFileHandler implements Close
 		if (typeColumn == -1) {
 			throw new RuntimeException("No type column for relationship");
 		}
-		ColumnHandler startHandler = columns[startColumn];
-		ColumnHandler endHandler = columns[endColumn];
-		ColumnHandler typeHandler = columns[typeColumn];
+		int columns = Math.min(record.size(), this.columns.length);
+		
+		Object startId = this.columns[startColumn].convert(record.get(startColumn));
+		if (startId == null) {
+			LOG.debug("Start-id field of edge record #{} of {} missing", recordNumber, chunk);
+			return null;
+		}
+		Object endId = this.columns[endColumn].convert(record.get(endColumn));
+		if (endId == null) {
+			LOG.debug("End-id field of edge record #{} of {} missing -- skipping", recordNumber, chunk);
+			return null;
+		}
+		if (hubs != null && (hubs.contains(startId) || hubs.contains(endId)) != hubEdges) {
+			return null;
+		}
+
+		long janusStartKey = keyMap.get(startId);
+		long janusEndKey = keyMap.get(endId);
 		
-		StopWatch watch = new StopWatch();
-		watch.start();
-		Transaction graph = mainGraph.newTransaction();
+		if (janusStartKey == IdMap.MISSING) {
+			LOG.debug("Making Edge from {}, but vertex wasn't created", startId);
+			if (! ignoreMissingNodes) {
+				LOG.error("Making Edge from {}, but vertex wasn't created -- aborting", startId);
+				aborted = true;
+			}
+			return null;
+		}
+		if (janusEndKey == IdMap.MISSING) {
+			LOG.debug("Making Edge to {}, but vertex wasn't created", endId);
+			if (! ignoreMissingNodes) {
+				LOG.error("Making Edge to {}, but vertex wasn't created -- aborting", endId);
+				aborted = true;
+			}
+			return null;
+		}
+
+		Object[] row = new Object[this.columns.length];
+		row[startColumn] = janusStartKey;
+		row[endColumn] = janusEndKey;
+		row[typeColumn] = this.columns[typeColumn].convert(record.get(typeColumn));
+		for (int c = 0; c < columns; ++c) {
+			ColumnHandler handler = this.columns[c];
+			Tag tag = handler.getTag();
+			if (tag == ColumnHandler.Tag.IGNORE || tag == ColumnHandler.Tag.START_ID || tag == ColumnHandler.Tag.END_ID || tag == ColumnHandler.Tag.TYPE) continue;
+			row[c] = handler.convert(emptyToNull(record.get(c)));
+		}
+		return row;
+	}
+
+	@Override
+	public void writeBatch(JanusGraph mainGraph, RowBatch batch) {
+		int edgesCreated = 0;
+		StandardJanusGraphTx graph = (StandardJanusGraphTx) newTransaction(mainGraph);
 		try {
-			do  {
-				if (this.currentParser == null) {
-						setupCSVParser(false);
+			Map<String, EdgeLabel> labels = new HashMap<>();
+			Map<Long, JanusGraphVertex> endpoints = fetchEndpoints(graph, batch.getRows());
+			for (Object[] row : batch.getRows()) {
+				JanusGraphVertex fromVertex = endpoints.get(row[startColumn]);
+				if (fromVertex == null) {
+					LOG.warn("Vertex with graph id {} couldn't be found -- skipping", row[startColumn]);
+					continue;
 				}
-				for (CSVRecord record : currentParser) {
-					if (edgesCreated >= limitRows) break;
-					int columns = Math.min(record.size(), this.columns.length);
-					
-					Object startId = startHandler.convert(record.get(startColumn));
-					if (startId == null) {
-						LOG.debug("Start-id field of edge record #{} of {} missing", currentParser.getRecordNumber(), currentFile);
-						continue;
-					}
-					Object endId = endHandler.convert(record.get(endColumn));
-					if (endId == null) {
-						LOG.debug("End-id field of edge record #{} of {} missing -- skipping", endId, currentFile);
-						continue;
-					}
-
-					Object janusStartKey = keyMap.get(startId);
-					Object janusEndKey = keyMap.get(endId);
-					
-					if (janusStartKey == null) {
-						LOG.debug("Making Edge from {}, but vertex wasn't created", startId);
-						if (! ignoreMissingNodes) {
-							LOG.error("Making Edge from {}, but vertex wasn't created -- aborting", startId);
-							break;
-						}
-						continue;
-					}
-					if (janusEndKey == null) {
-						LOG.debug("Making Edge to {}, but vertex wasn't created", endId);
-						if (! ignoreMissingNodes) {
-							LOG.error("Making Edge to {}, but vertex wasn't created -- aborting", endId);
-							break;
-						}
-						continue;
-					}
-					Iterator<Vertex> vertices = graph.vertices(janusStartKey, janusEndKey);
-					if (! vertices.hasNext()) {
-						LOG.warn("Vertex with id {} (graph id {}) couldn't be found -- skipping", startId, janusStartKey);
-						continue;
-					}
-					Vertex fromVertex = vertices.next();
-					if (! vertices.hasNext()) {
-						LOG.warn("Vertex with id {} (graph id {}) couldn't be found -- skipping", endId, janusEndKey);
-						continue;
-					}
-					Vertex toVertex = vertices.next();
-					String typeName = (String)typeHandler.convert(record.get(typeColumn));
-					Edge addedEdge = fromVertex.addEdge(typeName, toVertex);
-				
-					addedEdge.property("_label", typeName);
-					
-					for (int c = 0; c < columns; ++c) {
-						ColumnHandler handler = this.columns[c];
-						Tag tag = handler.getTag();
-						if (tag == ColumnHandler.Tag.IGNORE || tag == ColumnHandler.Tag.START_ID || tag == ColumnHandler.Tag.END_ID || tag == ColumnHandler.Tag.TYPE) continue;
-						
-						Object value = handler.convert(Strings.emptyToNull(record.get(c)));
-						if (value != null) {
-							addedEdge.property(handler.getName(), value);
-						}
-					}
-					if (++edgesCreated % 10000 == 0) {
-						graph.tx().commit();
-						graph.tx().close();
-						graph.close();
-						graph = mainGraph.newTransaction();
-						LOG.info("Created {} edges in {} ms, {} ms/edge", edgesCreated, watch.getTime(), (double) watch.getTime() / edgesCreated); 
-					}
+				JanusGraphVertex toVertex = endpoints.get(row[endColumn]);
+				if (toVertex == null) {
+					LOG.warn("Vertex with graph id {} couldn't be found -- skipping", row[endColumn]);
+					continue;
 				}
-				close();
-			} while (! files.isEmpty());
-			graph.tx().commit();
-			graph.tx().close();
-			graph.close();
-			
-			LOG.info("Created {} edges in {} ms, {} ms/edge", edgesCreated, watch.getTime(), (edgesCreated > 0 ? ((double) watch.getTime() / edgesCreated) : Double.NaN)); 
-		} catch (IOException e) {
-			LOG.error("Error reading file or writing vertex", e);
+				addEdge(graph, labels, fromVertex, toVertex, row);
+				++edgesCreated;
+			}
+			commit(graph);
+			checkpoint(batch, null, null);
+		} finally {
+			if (graph.tx().isOpen()) {
+				graph.tx().rollback();
+			}
+		}
+		addCreated(edgesCreated);
+	}
+
+	/**
+	 * Get the distinct endpoints of a batch up front, so a hub vertex shared by many of its edges
+	 * is only looked up once, and the others are read in one multi-get rather than one by one.
+	 * Vertices belong to the transaction, so they can't be kept for the next batch.
+	 */
+	private Map<Long, JanusGraphVertex> fetchEndpoints(StandardJanusGraphTx graph, List<Object[]> rows) {
+		Set<Long> ids = new HashSet<>();
+		for (Object[] row : rows) {
+			ids.add((Long) row[startColumn]);
+			ids.add((Long) row[endColumn]);
 		}
+		Map<Long, JanusGraphVertex> vertices = new HashMap<>(ids.size() * 2);
+		if (trustedIds) {
+			for (Long id : ids) {
+				vertices.put(id, graph.getVertex(id));
+			}
+		} else if (! ids.isEmpty()) {
+			Iterator<Vertex> found = graph.vertices(ids.toArray());
+			while (found.hasNext()) {
+				JanusGraphVertex vertex = (JanusGraphVertex) found.next();
+				vertices.put(vertex.longId(), vertex);
+			}
+		}
+		metrics.endpoints(2L * rows.size() - ids.size(), ids.size());
+		return vertices;
+	}
+
+	/**
+	 * With trusted ids, the endpoints were created by this import, so skip reading them back.
+	 */
+	@Override
+	protected JanusGraphTransaction newTransaction(JanusGraph graph) {
+		if (! trustedIds) {
+			return graph.newTransaction();
+		}
+		return graph.buildTransaction()
+				.enableBatchLoading()
+				.consistencyChecks(false)
+				.checkExternalVertexExistence(false)
+				.checkInternalVertexExistence(false)
+				.start();
+	}
+
+	@Override
+	public void logProgress() {
+		long edgesCreated = elementsCreated.get();
+		LOG.info("Created {} edges in {} ms, {} ms/edge, {} endpoint lookups saved, {} fetched", edgesCreated, watch.getTime(), (edgesCreated > 0 ? ((double) watch.getTime() / edgesCreated) : Double.NaN),
+				metrics.getEndpointHits(), metrics.getEndpointMisses()); 
 	}
 	
+	/**
+	 * Create the edge of a converted row, with its properties.
+	 *
+	 * @param labels The edge labels resolved so far in the transaction, by name
+	 */
+	JanusGraphEdge addEdge(StandardJanusGraphTx graph, Map<String, EdgeLabel> labels, JanusGraphVertex fromVertex, JanusGraphVertex toVertex, Object[] row) {
+		String typeName = (String) row[typeColumn];
+		EdgeLabel label = labels.computeIfAbsent(typeName, graph::getOrCreateEdgeLabel);
+		JanusGraphEdge addedEdge = graph.addEdge(fromVertex, toVertex, label);
+		plan.addProperties(addedEdge, row, typeName);
+		return addedEdge;
+	}
+
+	/**
+	 * Only convert the edges with a hub at either end, or only the edges without.
+	 *
+	 * @param hubs The START_ID and END_ID values of the hubs, or null to convert all edges
+	 */
+	public void setHubFilter(Set<Object> hubs, boolean hubEdges) {
+		this.hubs = hubs;
+		this.hubEdges = hubEdges;
+	}
+
+	/**
+	 * Count the START_ID and END_ID values of a chunk in the degrees of the vertices.
+	 */
+	public void countDegrees(FileChunk chunk, DegreeCount degrees) throws IOException {
+		try (CsvTokenizer tokenizer = openChunk(chunk)) {
+			for (CsvRow record = tokenizer.next(); record != null; record = tokenizer.next()) {
+				if (record.size() <= Math.max(startColumn, endColumn)) continue;
+				Object startId = columns[startColumn].convert(emptyToNull(record.get(startColumn)));
+				Object endId = columns[endColumn].convert(emptyToNull(record.get(endColumn)));
+				if (startId != null && endId != null) {
+					degrees.add(startId, endId);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the START_ID of a record as given in the file, before it is resolved to a vertex id
+	 */
+	Object readStartId(CsvRow record) {
+		return columns[startColumn].convert(emptyToNull(record.get(startColumn)));
+	}
+
+	/**
+	 * @return the index of the START_ID column, which holds the vertex id in converted rows
+	 */
+	public int getStartColumn() {
+		return startColumn;
+	}
+
+	/**
+	 * @return the index of the END_ID column, which holds the vertex id in converted rows
+	 */
+	public int getEndColumn() {
+		return endColumn;
+	}
+
 	private int findTag(Tag tag) {
 		for (int i = 0 ; i < columns.length; ++i) {
 			if (columns[i].getTag() == tag) return i;
@@ -158,11 +267,11 @@ public class EdgeFileHandler extends AbstractElementFileHandler implements Close
 	}
 
 	public void parseHeaders(SchemaBuilder schemaBuilder) throws IOException {
-		setupCSVParser(true);
-		int maxColumn = currentParser.getHeaderMap().values().stream().mapToInt(Integer::intValue).max().getAsInt();
+		Map<String, Integer> headers = readHeader();
+		int maxColumn = headers.values().stream().mapToInt(Integer::intValue).max().getAsInt();
 		columns = new ColumnHandler[maxColumn+1];
 		
-		this.currentParser.getHeaderMap().forEach((label, index) -> {
+		headers.forEach((label, index) -> {
 			ColumnHandler handler = makeColumnHandler(label);
 			columns[index] = handler;
 			
@@ -175,8 +284,14 @@ public class EdgeFileHandler extends AbstractElementFileHandler implements Close
 				schemaBuilder.property(handler.getName(), handler.getDatatype());
 			}
 		});
+		startColumn = findTag(ColumnHandler.Tag.START_ID);
+		endColumn = findTag(ColumnHandler.Tag.END_ID);
+		typeColumn = findTag(ColumnHandler.Tag.TYPE);
+		plan = WritePlan.forEdges(columns, labelProperty);
+		close();
 	}
 	
+	@Override
 	public String getDescription() {
 		return String.join(", ", files.stream().map(Object::toString).collect(Collectors.toList()));
 	}
@@ -0,0 +1,136 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.github.jespersm.janusgraph.csvimport;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Regroups the edge batches from the parsers by start vertex, so each writer of a partitioned
+ * {@link WriterPool} owns a disjoint set of start vertices, and no two transactions write the
+ * outgoing edges of the same vertex. Rows are collected per handler and partition until the
+ * commit policy of the handler is satisfied. Other batches are spread over the writers.
+ *
+ * Each partition collects its rows under a lock of its own, and full batches are handed to
+ * the writers outside of it, so a parser waiting for a busy writer holds up no other partition.
+ *
+ * Edges to a hub from a vertex which isn't one are routed by the hub instead, so all the
+ * edges of a hub are written by the same writer, one transaction after the other.
+ */
+class EdgePartitioner implements BatchSink {
+	private final WriterPool writers;
+	private final Partition[] partitions;
+	private final Set<Long> hubs;
+	private final AtomicInteger nextPartition = new AtomicInteger();
+
+	EdgePartitioner(WriterPool writers) {
+		this(writers, Collections.emptySet());
+	}
+
+	/**
+	 * @param hubs The vertex ids of the hubs
+	 */
+	EdgePartitioner(WriterPool writers, Set<Long> hubs) {
+		this.writers = writers;
+		this.partitions = new Partition[writers.getPartitions()];
+		for (int i = 0; i < partitions.length; ++i) {
+			partitions[i] = new Partition();
+		}
+		this.hubs = hubs;
+	}
+
+	@Override
+	public void submit(RowBatch batch) throws InterruptedException {
+		if (! (batch.getHandler() instanceof EdgeFileHandler)) {
+			writers.submit(batch, Math.floorMod(nextPartition.getAndIncrement(), partitions.length));
+			return;
+		}
+		EdgeFileHandler handler = (EdgeFileHandler) batch.getHandler();
+		@SuppressWarnings("unchecked")
+		List<Object[]>[] split = new List[partitions.length];
+		for (Object[] row : batch.getRows()) {
+			Object start = row[handler.getStartColumn()];
+			Object end = row[handler.getEndColumn()];
+			int partition = partition(hubs.contains(end) && ! hubs.contains(start) ? end : start);
+			if (split[partition] == null) {
+				split[partition] = new ArrayList<>();
+			}
+			split[partition].add(row);
+		}
+		for (int partition = 0; partition < partitions.length; ++partition) {
+			if (split[partition] == null) continue;
+			for (RowBatch full : partitions[partition].add(handler, split[partition])) {
+				writers.submit(full, partition);
+			}
+		}
+	}
+
+	/**
+	 * Submit the rows still collected. Call once the parsers are done.
+	 */
+	public void flush() throws InterruptedException {
+		for (int partition = 0; partition < partitions.length; ++partition) {
+			for (RowBatch batch : partitions[partition].takeAll()) {
+				writers.submit(batch, partition);
+			}
+		}
+	}
+
+	private int partition(Object id) {
+		long key = id instanceof Long ? (Long) id : Objects.hashCode(id);
+		return (int) Math.floorMod((key * 0x9E3779B97F4A7C15L) >>> 32, (long) partitions.length);
+	}
+
+	/**
+	 * The rows collected for one partition, per handler.
+	 */
+	private static final class Partition {
+		private final Map<EdgeFileHandler, RowBatch> pending = new IdentityHashMap<>();
+
+		/**
+		 * @return the batches filled up by the rows, to be submitted by the caller
+		 */
+		synchronized List<RowBatch> add(EdgeFileHandler handler, List<Object[]> rows) {
+			List<RowBatch> full = new ArrayList<>(1);
+			RowBatch batch = pending.get(handler);
+			for (Object[] row : rows) {
+				if (batch == null) {
+					batch = new RowBatch(handler, null);
+				}
+				batch.add(row);
+				if (handler.getCommitPolicy().isFull(batch.size(), batch.getEstimatedBytes())) {
+					full.add(batch);
+					batch = null;
+				}
+			}
+			if (batch != null) {
+				pending.put(handler, batch);
+			} else {
+				pending.remove(handler);
+			}
+			return full;
+		}
+
+		synchronized List<RowBatch> takeAll() {
+			List<RowBatch> batches = new ArrayList<>(pending.values());
+			pending.clear();
+			return batches;
+		}
+	}
+}
@@ -13,7 +13,13 @@
 package com.github.jespersm.janusgraph.csvimport;
 
 import java.io.Closeable;
+import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
@@ -25,14 +31,37 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
+import org.apache.commons.configuration.Configuration;
+import org.apache.commons.configuration.ConfigurationException;
+import org.apache.commons.configuration.PropertiesConfiguration;
 import org.janusgraph.core.JanusGraph;
 import org.janusgraph.core.JanusGraphFactory;
 import org.janusgraph.diskstorage.BackendException;
+import org.janusgraph.graphdb.database.StandardJanusGraph;
+import org.janusgraph.graphdb.idmanagement.IDManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.github.jespersm.janusgraph.csvimport.checkpoint.CheckpointLog;
+import com.github.jespersm.janusgraph.csvimport.commit.AdaptiveCommitPolicy;
+import com.github.jespersm.janusgraph.csvimport.commit.BackoffRetry;
+import com.github.jespersm.janusgraph.csvimport.commit.CommitPolicy;
+import com.github.jespersm.janusgraph.csvimport.commit.MutationBytesCommitPolicy;
+import com.github.jespersm.janusgraph.csvimport.commit.RowCountCommitPolicy;
+import com.github.jespersm.janusgraph.csvimport.idmap.IdMap;
+import com.github.jespersm.janusgraph.csvimport.idmap.IdMapFactory;
+import com.github.jespersm.janusgraph.csvimport.input.CsvDialect;
+import com.github.jespersm.janusgraph.csvimport.input.FileChunk;
+import com.github.jespersm.janusgraph.csvimport.metrics.ImportMetrics;
+import com.github.jespersm.janusgraph.csvimport.prescan.DegreeCount;
+import com.github.jespersm.janusgraph.csvimport.prescan.Prescan;
+import com.github.jespersm.janusgraph.csvimport.prescan.UniquenessCheck;
 import com.github.jespersm.janusgraph.csvimport.schema.DefaultSchemaBuilder;
+import com.github.jespersm.janusgraph.csvimport.schema.IndexDefinition;
+import com.github.jespersm.janusgraph.csvimport.schema.Reindexer;
+import com.github.jespersm.janusgraph.csvimport.staging.EdgeStager;
 import com.github.jespersm.janusgraph.csvimport.utils.IOConsumer;
 
 import picocli.CommandLine;
@@ -43,18 +72,29 @@ import picocli.CommandLine.RunLast;
 
 public class Import implements Callable<Void> {
 	private static final Logger LOG = LoggerFactory.getLogger(Import.class);
+	private static final String ID_BLOCK_SIZE = "ids.block-size";
 
-/*	static enum Mode {
-		CSV, TSV;
+	@Option(names = {"--multiline-fields"}, description = "Allow line breaks in quoted fields when splitting files into chunks")
+	private boolean multilineFields = false;
+
+	@Option(names = {"--chunk-size"}, description = "Split files into chunks of this many megabytes, loaded in parallel. 0 loads each file as one chunk")
+	private long chunkSize = 0;
+
+	static enum Mode {
+		CSV(CsvDialect.CSV), TSV(CsvDialect.TSV);
+
+		final CsvDialect dialect;
+
+		Mode(CsvDialect dialect) {
+			this.dialect = dialect;
+		}
 	}
 	
-	@Option(names = {"--mode"}, description = "Valid values: ${COMPLETION-CANDIDATES}")
-    private Mode mode;
-*/	
-	/*
-	 * @Option(names = {"--multiline-fields"})
-	 * private boolean multilineFields = false;
-	 */
+	@Option(names = {"--mode"}, description = "CSV for quoted, comma separated fields, TSV for unquoted, tab separated fields. Valid values: ${COMPLETION-CANDIDATES}")
+    private Mode mode = Mode.CSV;
+
+	@Option(names = {"--delimiter"}, description = "Separate fields with this character instead of the one of --mode")
+    private Character delimiter = null;
 	
 	@Option(names = {"--ignore-missing-nodes"})
     private boolean ignoreMissingNodes = true;
@@ -64,7 +104,10 @@ public class Import implements Callable<Void> {
     private boolean ignoreErrors = false;
 	*/
 	
-	@Option(names = {"--add-label-property"})
+	@Option(names = {"--trusted-ids"}, description = "Attach edges to the vertex ids from the id map without checking that the vertices exist")
+    private boolean trustedIds = false;
+
+	@Option(names = {"--add-label-property"}, arity = "1", description = "Copy the label of each vertex and edge into a _label property (default true)")
     private boolean addLabelProperty = true;
 	
 	@Option(names = {"-c", "--config"}, required=true)
@@ -79,8 +122,95 @@ public class Import implements Callable<Void> {
     @Option(names = {"-D", "--drop-before-import"})
     private boolean drop = false;
 
+    @Option(names = {"--id-map-dir"}, description = "Spill the id map to memory mapped files in this directory")
+    private File idMapDirectory = null;
+
+    @Option(names = {"--id-map-memory"}, description = "Megabytes of id map to keep in memory before spilling to --id-map-dir")
+    private long idMapMemory = 1024;
+
+    @Option(names = {"--fingerprint-ids"}, description = "Keep 128 bit fingerprints of string and uuid IDs in the id map, rather than the IDs")
+    private boolean fingerprintIds = false;
+
+    @Option(names = {"--derive-vertex-ids"}, description = "Create vertices with ids computed from their integral IDs instead of keeping an id map. Requires graph.set-vertex-id=true")
+    private boolean deriveVertexIds = false;
+
+    @Option(names = {"--defer-indexes"}, description = "Create new indexes after loading, with a parallel reindex, instead of maintaining them while loading. Unique ones only with --check-unique")
+    private boolean deferIndexes = false;
+
+    @Option(names = {"--check-unique"}, description = "Check that ID and UNIQUE values are unique before loading, then load without locks and build new unique indexes afterwards")
+    private boolean checkUnique = false;
+
+    @Option(names = {"--prescan"}, description = "Scan all files in parallel before loading, to count rows and edge labels and size the id map and id blocks")
+    private boolean prescan = false;
+
+    @Option(names = {"--dry-run"}, description = "Only scan the files and print what was found, without opening the graph")
+    private boolean dryRun = false;
+
+    @Option(names = {"--partition-edges"}, description = "Partition edges by start vertex over the writers, so no two writers add edges to the same vertex")
+    private boolean partitionEdges = false;
+
+    @Option(names = {"--supernode-degree"}, description = "Count the edges of each vertex before loading, and load the edges of vertices with at least this many last, 0 to disable")
+    private long supernodeDegree = 0;
+
+    @Option(names = {"--supernode-batch-size"}, description = "Rows per transaction for the edges of supernodes")
+    private int supernodeBatchSize = 1000;
+
+    @Option(names = {"--supernode-report"}, description = "Number of supernodes with the most edges to log")
+    private int supernodeReport = 10;
+
+    @Option(names = {"--merge-join"}, description = "Load vertex files sorted by ID and edge files sorted by START_ID in lockstep. Requires --derive-vertex-ids")
+    private boolean mergeJoin = false;
+
+    @Option(names = {"--staging-dir"}, description = "Sort the edges by vertex in run files in this directory before writing them")
+    private File stagingDirectory = null;
+
+    @Option(names = {"--staging-run-rows"}, description = "Edges to sort in memory before spilling them to a run file")
+    private int stagingRunRows = 1000000;
+
+    @Option(names = {"--checkpoint-dir"}, description = "Record each committed batch in this directory, so an interrupted import can be resumed")
+    private File checkpointDirectory = null;
+
+    @Option(names = {"--resume"}, description = "Continue an interrupted import from the checkpoints in --checkpoint-dir")
+    private boolean resume = false;
+
+    @Option(names = {"--metrics-port"}, description = "Serve metrics in the Prometheus text format on this local port")
+    private int metricsPort = 0;
+
+    @Option(names = {"--progress-interval"}, description = "Seconds between progress lines with an ETA, 0 to disable")
+    private long progressInterval = 30;
+
     @Option(names = {"--threads"}, description = "Number of threads to run concurrently")
     private int poolSize = 2;
+
+    @Option(names = {"--commit-policy"}, description = "How to size transactions. Valid values: ${COMPLETION-CANDIDATES}")
+    private CommitPolicy.Kind commitPolicy = CommitPolicy.Kind.ROWS;
+
+    @Option(names = {"--batch-size"}, description = "Rows per transaction for ROWS, the maximum for BYTES, the starting point for ADAPTIVE")
+    private int batchSize = 10000;
+
+    @Option(names = {"--batch-kb"}, description = "Estimated kilobytes of mutations per transaction for BYTES")
+    private long batchKb = 16384;
+
+    @Option(names = {"--commit-target-ms"}, description = "Target duration of each transaction for ADAPTIVE")
+    private long commitTargetMs = 2000;
+
+    @Option(names = {"--max-retries"}, description = "Times to retry a transaction failing with a transient backend error, before failing the import")
+    private int maxRetries = 5;
+
+    @Option(names = {"--retry-backoff-ms"}, description = "Wait before the first retry, doubling with each retry")
+    private long retryBackoffMs = 200;
+
+    @Option(names = {"--retry-max-backoff-ms"}, description = "Longest wait between retries")
+    private long retryMaxBackoffMs = 30000;
+
+    @Option(names = {"--parser-threads"}, description = "Number of threads reading and converting CSV, defaults to --threads")
+    private int parserThreads = 0;
+
+    @Option(names = {"--writer-threads"}, description = "Number of threads writing to the graph, defaults to --threads")
+    private int writerThreads = 0;
+
+    @Option(names = {"--queue-size"}, description = "Number of parsed batches waiting for a writer before parsing blocks, defaults to twice the writers")
+    private int queueSize = 0;
     
     @Option(names = {"-i", "--index"}, split=",")
     private Set<String> index = new LinkedHashSet<>();
@@ -91,76 +221,208 @@ public class Import implements Callable<Void> {
     @Option(names = {"--edgeLabels"}, split=",")
     private List<String> edgeLabels = new LinkedList<>();
 
-    @Option(names = {"--nodes"}, required=true)
+    @Option(names = {"--nodes"}, description = "Label=files of vertices to load. Required unless --derive-vertex-ids is used")
     private Map<String, String> nodes = new LinkedHashMap<>();
     
     @Option(names = {"--relationships"})
     private List<String> relationships = new LinkedList<>();
+
+	private List<ImportMetrics.Phase> phases = Collections.emptyList();
+
+	/**
+	 * @return the rows written and time taken to load the vertices and edges, once {@link #call()} is done
+	 */
+	public List<ImportMetrics.Phase> getPhases() {
+		return phases;
+	}
     
 	@Override
 	public Void call() throws Exception {
 
 		if (limitRows < 0) limitRows = Integer.MAX_VALUE-1;
+		if (nodes.isEmpty() && ! deriveVertexIds) {
+			throw new RuntimeException("Missing --nodes, which can only be left out with --derive-vertex-ids");
+		}
+		if (resume && (checkpointDirectory == null || drop)) {
+			throw new RuntimeException("--resume requires --checkpoint-dir, and can't be combined with --drop-before-import");
+		}
+		if (stagingDirectory != null && (checkpointDirectory != null || deriveVertexIds)) {
+			throw new RuntimeException("--staging-dir can't be combined with --checkpoint-dir or --derive-vertex-ids");
+		}
+		if (partitionEdges && checkpointDirectory != null) {
+			throw new RuntimeException("--partition-edges can't be combined with --checkpoint-dir");
+		}
+		if (supernodeDegree > 0 && (checkpointDirectory != null || mergeJoin)) {
+			throw new RuntimeException("--supernode-degree can't be combined with --checkpoint-dir or --merge-join");
+		}
+		if (mergeJoin && (! deriveVertexIds || checkpointDirectory != null)) {
+			throw new RuntimeException("--merge-join requires --derive-vertex-ids, and can't be combined with --checkpoint-dir");
+		}
 		
-		ConcurrentHashMap<Object, Object> keyMap = new ConcurrentHashMap<Object, Object>();
 		List<VertexFileHandler> vertexHandlers = new LinkedList<>();
 		List<EdgeFileHandler> edgeHandlers = new LinkedList<>();
+		CsvDialect dialect = delimiter != null ? mode.dialect.withDelimiter(delimiter) : mode.dialect;
 		
 		try {
 			// Open the vertex headers
 			for (Map.Entry<String, String> entry : nodes.entrySet()) {
-				VertexFileHandler handler = new VertexFileHandler(entry.getKey(), entry.getValue(), keyMap, limitRows);
+				VertexFileHandler handler = new VertexFileHandler(entry.getKey(), entry.getValue(), limitRows);
+				handler.setDialect(dialect);
+				handler.setLabelProperty(addLabelProperty);
 				vertexHandlers.add(handler);
 			}
 
 			// Open the edge headers
 			for (String files : relationships) {
-				EdgeFileHandler handler = new EdgeFileHandler(files, keyMap, limitRows, ignoreMissingNodes);
+				EdgeFileHandler handler = new EdgeFileHandler(files, limitRows, ignoreMissingNodes, trustedIds || deriveVertexIds);
+				handler.setDialect(dialect);
+				handler.setLabelProperty(addLabelProperty);
 				edgeHandlers.add(handler);
 			}
 
-			try(JanusGraph graph = initializeGraph()) {
+			Prescan scan = null;
+			if (prescan || dryRun) {
+				forEach(vertexHandlers, AbstractElementFileHandler::readColumns);
+				forEach(edgeHandlers, AbstractElementFileHandler::readColumns);
+				scan = new Prescan(vertexHandlers, edgeHandlers);
+				scan.run(parserThreads > 0 ? parserThreads : poolSize, chunkSize << 20, multilineFields);
+				if (dryRun) {
+					scan.print(System.out, writerCount());
+					return null;
+				}
+			}
+
+			if (checkUnique) {
+				forEach(vertexHandlers, AbstractElementFileHandler::readColumns);
+				IdMapFactory valueMapFactory = new IdMapFactory();
+				if (idMapDirectory != null) {
+					valueMapFactory.withScratchDirectory(idMapDirectory, idMapMemory << 20);
+				}
+				if (scan != null) {
+					valueMapFactory.withExpectedSize(scan.getVertexRows());
+				}
+				try (UniquenessCheck check = new UniquenessCheck(valueMapFactory, fingerprintIds)) {
+					check.run(vertexHandlers, parserThreads > 0 ? parserThreads : poolSize, chunkSize << 20, multilineFields);
+				}
+				forEach(vertexHandlers, handler -> handler.setUniqueChecked(true));
+			}
+
+			try(JanusGraph graph = initializeGraph(scan != null ? scan.suggestedIdBlockSize(writerCount()) : 0);
+					CheckpointLog checkpoints = checkpointDirectory != null ? new CheckpointLog(checkpointDirectory, resume) : null;
+					ImportMetrics metrics = new ImportMetrics()) {
+				for (AbstractElementFileHandler handler : vertexHandlers) {
+					handler.setMetrics(metrics.forHandler(handler.getDescription()));
+					metrics.addInputBytes(handler.getInputBytes());
+				}
+				for (AbstractElementFileHandler handler : edgeHandlers) {
+					handler.setMetrics(metrics.forHandler(handler.getDescription()));
+					metrics.addInputBytes(handler.getInputBytes());
+				}
+				if (metricsPort > 0) {
+					metrics.serveHttp(metricsPort);
+				}
+				if (progressInterval > 0) {
+					metrics.logProgressEvery(progressInterval);
+				}
 		
 				LOG.info("*** Building schema:");
-				try(DefaultSchemaBuilder schema = new DefaultSchemaBuilder(graph)) {
+				List<IndexDefinition> deferredIndexes;
+				try(DefaultSchemaBuilder schema = new DefaultSchemaBuilder(graph, deferIndexes, checkUnique)) {
 					forEach(vertexHandlers, handler -> handler.parseHeaders(schema));
 					forEach(edgeHandlers, handler -> handler.parseHeaders(schema));
 					
-					forEach(edgeLabels, label -> schema.edge(label.trim()).build());
-					schema.globalVertexIndex("_label", String.class);
+					Set<String> allEdgeLabels = new LinkedHashSet<>();
+					forEach(edgeLabels, label -> allEdgeLabels.add(label.trim()));
+					if (scan != null) {
+						allEdgeLabels.addAll(scan.getEdgeLabels());
+					}
+					forEach(allEdgeLabels, label -> schema.edge(label).build());
+					if (addLabelProperty) {
+						schema.globalVertexIndex("_label", String.class);
+					}
 					schema.done();
+					deferredIndexes = schema.getDeferredIndexes();
 				}				
-				
-				LOG.info("*** Creating vertices:");
-				doWithExecutor(executor -> {
-					forEach(vertexHandlers, (h) -> {
-						executor.execute(() -> {
-							LOG.info("Starting to write vertices: {}", h.getVertexLabelName());
-							try {
-								h.insertContent(graph);
-								LOG.info("Done writing vertices: {}", h.getVertexLabelName());
-							} catch (Exception e) {
-								LOG.error("Error handling vertex label: " + h.getVertexLabelName(), e);
-							}
-						});
-					});
-				});
-				
-				LOG.info("*** Creating edge:");
-				doWithExecutor(executor -> {
-					forEach(edgeHandlers, (h) -> {
-						executor.execute(() -> {
-							String desc = h.getDescription();
-							LOG.info("Starting to write edges from: {}", desc);
-							try {
-								h.insertContent(graph);
-								LOG.info("Starting to write edges from: {}", desc);
-							} catch (Exception e) {
-								LOG.error("Error handling vertex label: " + desc, e);
-							}
-						});
-					});
-				});
+
+				Set<Object> hubs = Collections.emptySet();
+				if (supernodeDegree > 0) {
+					LOG.info("*** Counting vertex degrees:");
+					metrics.startPhase("degrees");
+					DegreeCount degrees = new DegreeCount(supernodeDegree);
+					degrees.run(edgeHandlers, parserThreads > 0 ? parserThreads : poolSize, chunkSize << 20, multilineFields);
+					degrees.logTopHubs(supernodeReport);
+					metrics.endPhase();
+					hubs = degrees.getHubs();
+					for (EdgeFileHandler handler : edgeHandlers) {
+						handler.setHubFilter(hubs, false);
+					}
+				}
+
+				Set<Class<?>> idTypes = new LinkedHashSet<>();
+				for (VertexFileHandler handler : vertexHandlers) {
+					if (handler.getIdType() != null) idTypes.add(handler.getIdType());
+				}
+				IdMapFactory idMapFactory = new IdMapFactory().withFingerprints(fingerprintIds);
+				if (scan != null) {
+					idMapFactory.withExpectedSize(scan.getVertexRows());
+				}
+				if (idMapDirectory != null) {
+					idMapFactory.withScratchDirectory(idMapDirectory, idMapMemory << 20);
+				}
+				if (deriveVertexIds) {
+					IDManager idManager = checkVertexIdSetting(graph);
+					idMapFactory.withDerivedVertexIds(idManager.getVertexCountBound(), idManager::toVertexId);
+				}
+				try (IdMap keyMap = idMapFactory.create(idTypes)) {
+					metrics.setIdMap(keyMap);
+					forEach(vertexHandlers, handler -> handler.setKeyMap(keyMap));
+					// ID values are unique across labels
+					Set<Object> reservedIds = ConcurrentHashMap.newKeySet();
+					forEach(vertexHandlers, handler -> handler.setReservedIds(reservedIds));
+					forEach(edgeHandlers, handler -> handler.setKeyMap(keyMap));
+					if (checkpoints != null) {
+						forEach(vertexHandlers, handler -> handler.setCheckpoints(checkpoints));
+						forEach(edgeHandlers, handler -> handler.setCheckpoints(checkpoints));
+						if (resume && ! keyMap.derivesVertexIds()) {
+							checkpoints.restoreIds(keyMap);
+						}
+					}
+
+					if (mergeJoin) {
+						LOG.info("*** Creating vertices and edges from sorted files:");
+						insertMerged(graph, vertexHandlers, edgeHandlers, metrics);
+					} else if (keyMap.derivesVertexIds()) {
+						// Edges don't depend on the vertices being written first
+						LOG.info("*** Creating vertices and edges:");
+						List<AbstractElementFileHandler> allHandlers = new ArrayList<>(vertexHandlers);
+						allHandlers.addAll(edgeHandlers);
+						insertAll(graph, allHandlers, metrics, "vertices and edges", scan);
+					} else {
+						LOG.info("*** Creating vertices:");
+						insertAll(graph, vertexHandlers, metrics, "vertices", scan);
+
+						keyMap.freeze();
+
+						LOG.info("*** Creating edge:");
+						if (stagingDirectory != null) {
+							insertSorted(graph, edgeHandlers, metrics, scan);
+						} else {
+							insertAll(graph, edgeHandlers, metrics, "edges", scan);
+						}
+					}
+					if (! hubs.isEmpty()) {
+						LOG.info("*** Creating edges of supernodes:");
+						insertHubEdges(graph, edgeHandlers, metrics, hubs, keyMap);
+					}
+				}
+				if (! deferredIndexes.isEmpty()) {
+					LOG.info("*** Building indexes:");
+					metrics.startPhase("indexes");
+					new Reindexer(graph, poolSize).build(deferredIndexes);
+					metrics.endPhase();
+				}
+				metrics.logProgress();
+				phases = metrics.getPhases();
 			}
 		} finally {
 			LOG.info("Closing handlers");
@@ -171,25 +433,249 @@ public class Import implements Callable<Void> {
         return null;
 	}
 
-	private JanusGraph initializeGraph() throws BackendException {
+	/**
+	 * @param idBlockSize The ids.block-size to use unless the configuration sets it, or 0
+	 */
+	private JanusGraph initializeGraph(long idBlockSize) throws BackendException, ConfigurationException {
 		LOG.info("Opening graph from information in {}", configFile);
-		JanusGraph graph = JanusGraphFactory.open(configFile);
+		Configuration config = loadConfiguration();
+		if (idBlockSize > 0 && ! config.containsKey(ID_BLOCK_SIZE)) {
+			LOG.info("Using {}={} for new graphs", ID_BLOCK_SIZE, idBlockSize);
+			config.setProperty(ID_BLOCK_SIZE, idBlockSize);
+		}
+		JanusGraph graph = JanusGraphFactory.open(config);
 		if (drop) {
 			LOG.info("DROPPING GRAPH AT {}!", configFile);
 			JanusGraphFactory.drop(graph);
-			graph = JanusGraphFactory.open(configFile);
+			graph = JanusGraphFactory.open(config);
 		}
 		return graph;
 	}
 
+	/**
+	 * Load the properties of --config, resolving relative storage and index directories against
+	 * the directory of the file like {@link JanusGraphFactory#open(String)} does.
+	 */
+	private Configuration loadConfiguration() throws ConfigurationException {
+		File file = new File(configFile);
+		PropertiesConfiguration config = new PropertiesConfiguration(file);
+		File parent = file.getAbsoluteFile().getParentFile();
+		for (Iterator<String> keys = config.getKeys(); keys.hasNext(); ) {
+			String key = keys.next();
+			if (key.matches("(storage|index)\\..*(directory|conf-file)")) {
+				File value = new File(config.getString(key));
+				if (! value.isAbsolute()) {
+					config.setProperty(key, new File(parent, value.getPath()).getAbsolutePath());
+				}
+			}
+		}
+		return config;
+	}
+
+	private int writerCount() {
+		return writerThreads > 0 ? writerThreads : poolSize;
+	}
+
+	private IDManager checkVertexIdSetting(JanusGraph graph) {
+		StandardJanusGraph standardGraph = (StandardJanusGraph) graph;
+		if (! standardGraph.getConfiguration().allowVertexIdSetting()) {
+			throw new RuntimeException("--derive-vertex-ids requires graph.set-vertex-id=true in " + configFile);
+		}
+		return standardGraph.getIDManager();
+	}
+
+	/**
+	 * Split the files of the handlers into chunks, and parse them using a work stealing pool,
+	 * largest chunks first, by rows if a scan counted them. The parsed batches are written by a
+	 * separate pool of writers.
+	 */
+	private void insertAll(JanusGraph graph, List<? extends AbstractElementFileHandler> handlers, ImportMetrics metrics, String phase, Prescan scan) throws IOException, InterruptedException {
+		List<ChunkTask> tasks = splitAll(handlers, scan, this::makeCommitPolicy);
+		boolean partitioned = partitionEdges && handlers.stream().anyMatch(handler -> handler instanceof EdgeFileHandler);
+		WriterPool writerPool = newWriterPool(graph, metrics, partitioned);
+		metrics.startPhase(phase);
+		if (partitioned) {
+			parsePartitioned(tasks, handlers, new EdgePartitioner(writerPool));
+		} else {
+			parseAll(tasks, writerPool);
+		}
+		writerPool.finish();
+		checkRead(handlers);
+		metrics.endPhase();
+	}
+
+	/**
+	 * Load the edges with a hub at either end, which the other phases left out, once everything
+	 * else is written. They are written in small transactions, partitioned by hub, so the edges
+	 * of each hub are written one transaction after the other.
+	 */
+	private void insertHubEdges(JanusGraph graph, List<EdgeFileHandler> handlers, ImportMetrics metrics, Set<Object> hubs, IdMap keyMap) throws IOException, InterruptedException {
+		Set<Long> hubIds = new HashSet<>();
+		for (Object hub : hubs) {
+			long id = keyMap.get(hub);
+			if (id != IdMap.MISSING) {
+				hubIds.add(id);
+			}
+		}
+		for (EdgeFileHandler handler : handlers) {
+			handler.setHubFilter(hubs, true);
+		}
+		List<ChunkTask> tasks = splitAll(handlers, null, () -> new RowCountCommitPolicy(supernodeBatchSize));
+		WriterPool writerPool = newWriterPool(graph, metrics, true);
+		metrics.startPhase("supernode edges");
+		parsePartitioned(tasks, handlers, new EdgePartitioner(writerPool, hubIds));
+		writerPool.finish();
+		checkRead(handlers);
+		metrics.endPhase();
+	}
+
+	/**
+	 * Like {@link #insertAll}, but sort the parsed edges by the storage keys of their vertices in
+	 * run files first, so the edges of each vertex are written together, in storage order.
+	 */
+	private void insertSorted(JanusGraph graph, List<EdgeFileHandler> handlers, ImportMetrics metrics, Prescan scan) throws IOException, InterruptedException {
+		List<ChunkTask> tasks = splitAll(handlers, scan, this::makeCommitPolicy);
+		IDManager idManager = ((StandardJanusGraph) graph).getIDManager();
+		try (EdgeStager stager = new EdgeStager(stagingDirectory, handlers, stagingRunRows, id -> idManager.getKey(id).getLong(0))) {
+			// Keep the handlers from counting as done once their chunks are parsed
+			forEach(handlers, AbstractElementFileHandler::workAdded);
+			metrics.startPhase("staging edges");
+			parseAll(tasks, stager);
+			checkRead(handlers);
+			stager.finishRuns();
+			metrics.endPhase();
+
+			WriterPool writerPool = newWriterPool(graph, metrics, partitionEdges);
+			metrics.startPhase("edges");
+			try {
+				if (partitionEdges) {
+					EdgePartitioner partitioner = new EdgePartitioner(writerPool);
+					stager.merge(partitioner);
+					partitioner.flush();
+				} else {
+					stager.merge(writerPool);
+				}
+			} finally {
+				forEach(handlers, AbstractElementFileHandler::workDone);
+				writerPool.finish();
+			}
+			metrics.endPhase();
+		}
+	}
+
+	/**
+	 * Read the sorted vertex and edge files in lockstep on one thread, writing each vertex
+	 * together with its edges with the pool of writers.
+	 */
+	private void insertMerged(JanusGraph graph, List<VertexFileHandler> vertexHandlers, List<EdgeFileHandler> edgeHandlers, ImportMetrics metrics) throws IOException, InterruptedException {
+		MergeJoinHandler handler = new MergeJoinHandler(vertexHandlers, edgeHandlers);
+		handler.setCommitPolicy(makeCommitPolicy());
+		handler.setMetrics(metrics.forHandler("merge_join"));
+		WriterPool writerPool = newWriterPool(graph, metrics, false);
+		metrics.startPhase("vertices and edges");
+		try {
+			handler.readAll(writerPool);
+		} finally {
+			writerPool.finish();
+		}
+		metrics.endPhase();
+	}
+
+	private List<ChunkTask> splitAll(List<? extends AbstractElementFileHandler> handlers, Prescan scan, Supplier<CommitPolicy> commitPolicies) throws IOException {
+		List<ChunkTask> tasks = new ArrayList<>();
+		for (AbstractElementFileHandler handler : handlers) {
+			handler.setCommitPolicy(commitPolicies.get());
+			List<FileChunk> chunks = handler.split(chunkSize << 20, multilineFields);
+			LOG.info("Starting to write {} in {} chunk(s), {}", handler.getDescription(), chunks.size(), handler.getCommitPolicy());
+			if (chunks.isEmpty()) {
+				handler.logProgress();
+			}
+			for (FileChunk chunk : chunks) {
+				tasks.add(new ChunkTask(handler, chunk));
+			}
+		}
+		tasks.sort(Comparator.comparingLong((ChunkTask task) -> scan != null ? scan.getRows(task.handler, task.chunk) : -1)
+				.thenComparingLong(task -> task.chunk.size()).reversed());
+		return tasks;
+	}
+
+	private WriterPool newWriterPool(JanusGraph graph, ImportMetrics metrics, boolean partitioned) {
+		int writers = writerCount();
+		WriterPool writerPool = new WriterPool(graph, writers, queueSize > 0 ? queueSize : 2 * writers,
+				new BackoffRetry(maxRetries, retryBackoffMs, retryMaxBackoffMs), partitioned);
+		metrics.setQueueDepth(writerPool::getQueueDepth);
+		return writerPool;
+	}
+
+	private void parseAll(List<ChunkTask> tasks, BatchSink sink) throws IOException {
+		doWithExecutor(parserThreads > 0 ? parserThreads : poolSize, executor -> {
+			forEach(tasks, task -> {
+				executor.execute(() -> {
+					AbstractElementFileHandler h = task.handler;
+					try {
+						h.readChunk(task.chunk, sink);
+					} catch (Exception e) {
+						LOG.error("Error handling " + h.getDescription() + " in " + task.chunk, e);
+						h.chunkFailed();
+					} finally {
+						h.workDone();
+					}
+				});
+			});
+		});
+	}
+
+	private void parsePartitioned(List<ChunkTask> tasks, List<? extends AbstractElementFileHandler> handlers, EdgePartitioner partitioner) throws IOException, InterruptedException {
+		// Keep the handlers from counting as done while rows wait in the partitioner
+		forEach(handlers, AbstractElementFileHandler::workAdded);
+		try {
+			parseAll(tasks, partitioner);
+			partitioner.flush();
+		} finally {
+			forEach(handlers, AbstractElementFileHandler::workDone);
+		}
+	}
+
+	/**
+	 * Fail the phase if any chunk couldn't be read, like {@link WriterPool#finish()} does for batches.
+	 */
+	private void checkRead(List<? extends AbstractElementFileHandler> handlers) {
+		int failed = handlers.stream().mapToInt(AbstractElementFileHandler::getFailedChunks).sum();
+		if (failed > 0) {
+			throw new RuntimeException(failed + " chunk(s) could not be read, see the log for the errors");
+		}
+	}
+
+	private CommitPolicy makeCommitPolicy() {
+		switch (commitPolicy) {
+		case BYTES:
+			return new MutationBytesCommitPolicy(batchKb << 10, batchSize);
+		case ADAPTIVE:
+			return new AdaptiveCommitPolicy(batchSize, commitTargetMs);
+		case ROWS:
+		default:
+			return new RowCountCommitPolicy(batchSize);
+		}
+	}
+
+	private static final class ChunkTask {
+		final AbstractElementFileHandler handler;
+		final FileChunk chunk;
+
+		ChunkTask(AbstractElementFileHandler handler, FileChunk chunk) {
+			this.handler = handler;
+			this.chunk = chunk;
+		}
+	}
+
 	private <T> void forEach(Iterable<T> handlers, IOConsumer<T> consumer) throws IOException {
 		for (T vfe : handlers) {
 			consumer.accept(vfe);
 		}
 	}
 
-	void doWithExecutor(IOConsumer<ExecutorService> consumer) throws IOException {
-		ExecutorService executor = Executors.newFixedThreadPool(poolSize);
+	void doWithExecutor(int threads, IOConsumer<ExecutorService> consumer) throws IOException {
+		ExecutorService executor = Executors.newWorkStealingPool(threads);
 		consumer.accept(executor);
 		LOG.info("Awaiting termination of jobs");
 		awaitTerminationAfterShutdown(executor);
@@ -0,0 +1,332 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.github.jespersm.janusgraph.csvimport;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang3.time.StopWatch;
+import org.janusgraph.core.EdgeLabel;
+import org.janusgraph.core.JanusGraph;
+import org.janusgraph.core.JanusGraphTransaction;
+import org.janusgraph.core.JanusGraphVertex;
+import org.janusgraph.core.PropertyKey;
+import org.janusgraph.core.VertexLabel;
+import org.janusgraph.graphdb.transaction.StandardJanusGraphTx;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.jespersm.janusgraph.csvimport.commit.CommitPolicy;
+import com.github.jespersm.janusgraph.csvimport.commit.RowCountCommitPolicy;
+import com.github.jespersm.janusgraph.csvimport.input.CsvRow;
+import com.github.jespersm.janusgraph.csvimport.input.CsvTokenizer;
+import com.github.jespersm.janusgraph.csvimport.input.FileChunk;
+import com.github.jespersm.janusgraph.csvimport.metrics.HandlerMetrics;
+
+/**
+ * Loads vertex files sorted by their ID column together with edge files sorted by their
+ * START_ID column, walking them in lockstep, so each vertex is written in the same
+ * transaction as the edges leaving it. Vertex ids are derived from the IDs, so END_IDs are
+ * resolved without an id map, and memory use doesn't grow with the graph.
+ *
+ * The files of each handler are read one after the other, and the order is checked as they
+ * are read: an ID which isn't greater than the one before, or a START_ID less than the one
+ * before, fails the import. The IDs of all vertex files are checked once merged as well, as
+ * an ID in two files would be written twice under the same vertex id.
+ */
+class MergeJoinHandler implements BatchWriter {
+	private static final Logger LOG = LoggerFactory.getLogger(MergeJoinHandler.class);
+	private static final int PROGRESS_INTERVAL = 10000;
+
+	private final List<VertexFileHandler> vertexHandlers;
+	private final List<EdgeFileHandler> edgeHandlers;
+	private final AtomicLong elementsCreated = new AtomicLong();
+	private final AtomicInteger pendingWork = new AtomicInteger();
+	private final StopWatch watch = new StopWatch();
+	private volatile boolean aborted = false;
+	private CommitPolicy commitPolicy = new RowCountCommitPolicy(10000);
+	private HandlerMetrics metrics = HandlerMetrics.detached();
+
+	MergeJoinHandler(List<VertexFileHandler> vertexHandlers, List<EdgeFileHandler> edgeHandlers) {
+		this.vertexHandlers = vertexHandlers;
+		this.edgeHandlers = edgeHandlers;
+	}
+
+	@Override
+	public String getDescription() {
+		return "sorted vertices and edges";
+	}
+
+	@Override
+	public CommitPolicy getCommitPolicy() {
+		return commitPolicy;
+	}
+
+	public void setCommitPolicy(CommitPolicy commitPolicy) {
+		this.commitPolicy = commitPolicy;
+	}
+
+	@Override
+	public HandlerMetrics getMetrics() {
+		return metrics;
+	}
+
+	public void setMetrics(HandlerMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	@Override
+	public void workAdded() {
+		pendingWork.incrementAndGet();
+	}
+
+	@Override
+	public void workDone() {
+		if (pendingWork.decrementAndGet() == 0) {
+			logProgress();
+			LOG.info("Done writing {}", getDescription());
+		}
+	}
+
+	@Override
+	public void abort() {
+		aborted = true;
+	}
+
+	/**
+	 * Merge the vertex and edge files by ID, passing the rows on in batches, which are only cut
+	 * between the edges of different vertices unless they grow to twice the commit policy.
+	 */
+	public void readAll(BatchSink writers) throws IOException, InterruptedException {
+		watch.reset();
+		watch.start();
+		workAdded();
+		PriorityQueue<SortedInput> vertices = new PriorityQueue<>(Comparator.comparingLong(SortedInput::key));
+		PriorityQueue<SortedInput> edges = new PriorityQueue<>(Comparator.comparingLong(SortedInput::key));
+		List<SortedInput> inputs = new ArrayList<>();
+		try {
+			for (VertexFileHandler handler : vertexHandlers) {
+				inputs.add(new SortedInput(handler, true));
+			}
+			for (EdgeFileHandler handler : edgeHandlers) {
+				inputs.add(new SortedInput(handler, false));
+			}
+			for (SortedInput input : inputs) {
+				if (input.advance()) {
+					(input.vertices ? vertices : edges).add(input);
+				}
+			}
+			JoinBatch batch = new JoinBatch(this);
+			boolean vertexSeen = false;
+			long lastVertex = 0;
+			while (! vertices.isEmpty() || ! edges.isEmpty()) {
+				boolean vertexNext = ! vertices.isEmpty() && (edges.isEmpty() || vertices.peek().key() <= edges.peek().key());
+				if (batch.size() > 0 && (vertexNext
+						? getCommitPolicy().isFull(batch.size(), batch.getEstimatedBytes())
+						: getCommitPolicy().isFull(batch.size() / 2, batch.getEstimatedBytes() / 2))) {
+					writers.submit(batch);
+					batch = new JoinBatch(this);
+				}
+				PriorityQueue<SortedInput> queue = vertexNext ? vertices : edges;
+				SortedInput input = queue.poll();
+				if (vertexNext) {
+					if (vertexSeen && input.key() <= lastVertex) {
+						throw new RuntimeException("ID " + input.key() + " of " + input.handler.getDescription() + " is also in another vertex file");
+					}
+					vertexSeen = true;
+					lastVertex = input.key();
+				}
+				if (input.handler.claimRow()) {
+					batch.add(input.handler, input.row);
+				}
+				if (input.advance()) {
+					queue.add(input);
+				}
+				if (aborted) break;
+			}
+			if (batch.size() > 0) {
+				writers.submit(batch);
+			}
+		} finally {
+			for (SortedInput input : inputs) {
+				input.close();
+			}
+			workDone();
+		}
+	}
+
+	@Override
+	public void writeBatch(JanusGraph mainGraph, RowBatch rowBatch) {
+		JoinBatch batch = (JoinBatch) rowBatch;
+		StandardJanusGraphTx graph = (StandardJanusGraphTx) newTransaction(mainGraph);
+		try {
+			Map<VertexFileHandler, VertexLabel> labels = new IdentityHashMap<>();
+			Map<VertexFileHandler, PropertyKey[]> keys = new IdentityHashMap<>();
+			Map<String, EdgeLabel> edgeLabels = new HashMap<>();
+			Iterator<AbstractElementFileHandler> handlers = batch.getHandlers().iterator();
+			for (Object[] row : batch.getRows()) {
+				AbstractElementFileHandler handler = handlers.next();
+				if (handler instanceof VertexFileHandler) {
+					VertexFileHandler vertexHandler = (VertexFileHandler) handler;
+					vertexHandler.addVertex(graph,
+							labels.computeIfAbsent(vertexHandler, h -> h.resolveLabel(graph)),
+							keys.computeIfAbsent(vertexHandler, h -> h.resolveKeys(graph)),
+							row);
+				} else {
+					EdgeFileHandler edgeHandler = (EdgeFileHandler) handler;
+					JanusGraphVertex fromVertex = graph.getVertex((Long) row[edgeHandler.getStartColumn()]);
+					JanusGraphVertex toVertex = graph.getVertex((Long) row[edgeHandler.getEndColumn()]);
+					edgeHandler.addEdge(graph, edgeLabels, fromVertex, toVertex, row);
+				}
+			}
+			long started = System.nanoTime();
+			graph.commit();
+			metrics.committed(System.nanoTime() - started);
+		} finally {
+			if (graph.isOpen()) {
+				graph.rollback();
+			}
+		}
+		metrics.rowsWritten(batch.size());
+		long before = elementsCreated.getAndAdd(batch.size());
+		if (before / PROGRESS_INTERVAL != (before + batch.size()) / PROGRESS_INTERVAL) {
+			logProgress();
+		}
+	}
+
+	/**
+	 * The vertices are created with the ids derived from their IDs, and the edges attached to
+	 * them without checking that they exist, since an endpoint may be written by another batch.
+	 */
+	private JanusGraphTransaction newTransaction(JanusGraph graph) {
+		return graph.buildTransaction()
+				.enableBatchLoading()
+				.consistencyChecks(false)
+				.checkExternalVertexExistence(false)
+				.checkInternalVertexExistence(false)
+				.start();
+	}
+
+	public void logProgress() {
+		long created = elementsCreated.get();
+		LOG.info("Created {} vertices and edges in {} ms, {} ms/element", created, watch.getTime(), created > 0 ? (double) watch.getTime() / created : Double.NaN);
+	}
+
+	/**
+	 * The converted rows of the files of one handler, with the ID or START_ID of each.
+	 */
+	private final class SortedInput {
+		final AbstractElementFileHandler handler;
+		final boolean vertices;
+		private final Iterator<FileChunk> chunks;
+		private CsvTokenizer tokenizer = null;
+		private FileChunk chunk = null;
+		private long bytesReported = 0;
+		private boolean started = false;
+		private long key;
+		Object[] row;
+
+		SortedInput(AbstractElementFileHandler handler, boolean vertices) throws IOException {
+			this.handler = handler;
+			this.vertices = vertices;
+			this.chunks = handler.split(0, false).iterator();
+		}
+
+		long key() {
+			return key;
+		}
+
+		/**
+		 * Move to the next row which converts, checking that it comes in order.
+		 *
+		 * @return false at the end of the files
+		 */
+		boolean advance() throws IOException {
+			while (true) {
+				if (tokenizer == null) {
+					if (! chunks.hasNext()) {
+						return false;
+					}
+					chunk = chunks.next();
+					tokenizer = handler.openChunk(chunk);
+					bytesReported = 0;
+				}
+				CsvRow record = tokenizer.next();
+				if (record == null) {
+					metrics.bytesRead(tokenizer.getBytesRead() - bytesReported);
+					tokenizer.close();
+					tokenizer = null;
+					continue;
+				}
+				Object[] converted = handler.convert(record, chunk, record.getRecordNumber());
+				if (handler.isAborted()) {
+					// Such as by an edge to a missing vertex, after which the rows would be dropped unnoticed
+					throw new RuntimeException("Stopped merging, as " + handler.getDescription() + " was aborted, see the log for the errors");
+				}
+				if (converted == null) continue;
+				Object id = vertices ? ((VertexFileHandler) handler).getId(converted) : ((EdgeFileHandler) handler).readStartId(record);
+				if (! (id instanceof Number)) {
+					throw new RuntimeException("Record " + record.getRecordNumber() + " of " + chunk + " has no integral " + (vertices ? "ID" : "START_ID"));
+				}
+				long next = ((Number) id).longValue();
+				if (started && (vertices ? next <= key : next < key)) {
+					throw new RuntimeException((vertices ? "ID " : "START_ID ") + next + " in record " + record.getRecordNumber() + " of " + chunk
+							+ " follows " + key + ", but the files must be sorted by " + (vertices ? "ascending, unique IDs" : "ascending START_ID"));
+				}
+				if (tokenizer.getBytesRead() - bytesReported > (1 << 20)) {
+					metrics.bytesRead(tokenizer.getBytesRead() - bytesReported);
+					bytesReported = tokenizer.getBytesRead();
+				}
+				started = true;
+				key = next;
+				row = converted;
+				return true;
+			}
+		}
+
+		void close() throws IOException {
+			if (tokenizer != null) {
+				tokenizer.close();
+			}
+		}
+	}
+
+	/**
+	 * A batch of rows from several handlers, in the order they are to be written.
+	 */
+	private static final class JoinBatch extends RowBatch {
+		private final List<AbstractElementFileHandler> handlers = new ArrayList<>();
+
+		JoinBatch(MergeJoinHandler handler) {
+			super(handler, null);
+		}
+
+		void add(AbstractElementFileHandler handler, Object[] row) {
+			handlers.add(handler);
+			add(row);
+		}
+
+		List<AbstractElementFileHandler> getHandlers() {
+			return handlers;
+		}
+	}
+}
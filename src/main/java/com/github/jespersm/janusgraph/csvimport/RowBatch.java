@@ -0,0 +1,119 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package com.github.jespersm.janusgraph.csvimport;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import com.github.jespersm.janusgraph.csvimport.input.FileChunk;
+
+/**
+ * Converted rows from one chunk, on their way from a parser thread to a writer thread.
+ * Each batch is written in a transaction of its own.
+ */
+public class RowBatch {
+	private static final int ELEMENT_OVERHEAD = 64;
+	private static final int PROPERTY_OVERHEAD = 24;
+
+	private final BatchWriter handler;
+	private final FileChunk chunk;
+	private final List<Object[]> rows = new ArrayList<>();
+	private long estimatedBytes = 0;
+	private long afterRecord = 0;
+	private long lastRecord = 0;
+	private boolean endsChunk = false;
+
+	/**
+	 * @param chunk The chunk the rows are read from, or null if they come from several
+	 */
+	public RowBatch(BatchWriter handler, FileChunk chunk) {
+		this.handler = handler;
+		this.chunk = chunk;
+	}
+
+	public BatchWriter getHandler() {
+		return handler;
+	}
+
+	public FileChunk getChunk() {
+		return chunk;
+	}
+
+	public List<Object[]> getRows() {
+		return rows;
+	}
+
+	public void add(Object[] row) {
+		rows.add(row);
+		estimatedBytes += estimateSize(row);
+	}
+
+	/**
+	 * @return a rough estimate of the size of the mutations needed to write the rows
+	 */
+	public long getEstimatedBytes() {
+		return estimatedBytes;
+	}
+
+	private static long estimateSize(Object[] row) {
+		long bytes = ELEMENT_OVERHEAD;
+		for (Object value : row) {
+			if (value == null) continue;
+			bytes += PROPERTY_OVERHEAD;
+			if (value instanceof String) {
+				bytes += ((String) value).length();
+			} else if (value instanceof UUID) {
+				bytes += 16;
+			} else {
+				bytes += 8;
+			}
+		}
+		return bytes;
+	}
+
+	/**
+	 * Set the range of record numbers in the chunk covered by the batch, including skipped records.
+	 *
+	 * @param afterRecord The record number before the first one of the batch
+	 * @param lastRecord The last record number of the batch
+	 * @param endsChunk Whether the batch ends with the last record of the chunk
+	 */
+	public void setRecords(long afterRecord, long lastRecord, boolean endsChunk) {
+		this.afterRecord = afterRecord;
+		this.lastRecord = lastRecord;
+		this.endsChunk = endsChunk;
+	}
+
+	public long getAfterRecord() {
+		return afterRecord;
+	}
+
+	public long getLastRecord() {
+		return lastRecord;
+	}
+
+	public boolean endsChunk() {
+		return endsChunk;
+	}
+
+	public int size() {
+		return rows.size();
+	}
+
+	@Override
+	public String toString() {
+		return rows.size() + " rows of " + (chunk != null ? chunk : handler.getDescription());
+	}
+}
@@ -15,97 +15,214 @@ package com.github.jespersm.janusgraph.csvimport;
 import java.io.Closeable;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
-import org.apache.commons.csv.CSVRecord;
-import org.apache.commons.lang3.time.StopWatch;
 import org.janusgraph.core.JanusGraph;
+import org.janusgraph.core.JanusGraphTransaction;
 import org.janusgraph.core.JanusGraphVertex;
-import org.janusgraph.core.Transaction;
+import org.janusgraph.core.PropertyKey;
+import org.janusgraph.core.VertexLabel;
+import org.janusgraph.graphdb.transaction.StandardJanusGraphTx;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.github.jespersm.janusgraph.csvimport.ColumnHandler.Tag;
+import com.github.jespersm.janusgraph.csvimport.idmap.IdMap;
+import com.github.jespersm.janusgraph.csvimport.input.CsvRow;
+import com.github.jespersm.janusgraph.csvimport.input.CsvTokenizer;
+import com.github.jespersm.janusgraph.csvimport.input.FileChunk;
+import com.github.jespersm.janusgraph.csvimport.prescan.UniquenessCheck;
 import com.github.jespersm.janusgraph.csvimport.schema.SchemaBuilder;
 import com.github.jespersm.janusgraph.csvimport.schema.VertexTypeBuilder;
-import com.google.common.base.Strings;
 
 public class VertexFileHandler extends AbstractElementFileHandler implements Closeable, AutoCloseable {
 	final String vertexLabelName;
+	private int idColumn = -1;
+	private boolean uniqueChecked = false;
+	private Set<Object> reservedIds = ConcurrentHashMap.newKeySet();
+	private WritePlan plan;
 	
 	private static final Logger LOG = LoggerFactory.getLogger(VertexFileHandler.class);
 
-	private int limitRows;
-	public VertexFileHandler(String vertexLabelName, String files, Map<Object, Object> keyMap, int limitRows) throws FileNotFoundException {
-		super(files, keyMap);
+	public VertexFileHandler(String vertexLabelName, String files, int limitRows) throws FileNotFoundException {
+		super(files, limitRows);
 		this.vertexLabelName = vertexLabelName;
-		this.limitRows = limitRows;
+	}
+
+	/**
+	 * The ID and UNIQUE values are known to be unique, so write without checking them, in
+	 * batch loading transactions without consistency checks.
+	 */
+	public void setUniqueChecked(boolean uniqueChecked) {
+		this.uniqueChecked = uniqueChecked;
+	}
+
+	/**
+	 * Share the ids of the batches being written with other handlers whose ids share the id
+	 * map, so a duplicate id is caught even if the batches are written at the same time.
+	 */
+	public void setReservedIds(Set<Object> reservedIds) {
+		this.reservedIds = reservedIds;
 	}
 
 	public String getVertexLabelName() {
 		return vertexLabelName;
 	}
 	
-	public void insertContent(JanusGraph mainGraph) {
-		int verticesCreated = 0;
-		StopWatch watch = new StopWatch();
-		watch.start();
-		Transaction graph = mainGraph.newTransaction();
+	@Override
+	public String getDescription() {
+		return vertexLabelName;
+	}
+
+	@Override
+	protected Object[] convert(CsvRow record, FileChunk chunk, long recordNumber) {
+		int columns = Math.min(record.size(), this.columns.length);
+		Object[] row = new Object[this.columns.length];
+		for (int c = 0; c < columns; ++c) {
+			ColumnHandler handler = this.columns[c];
+			if (handler.getTag() == ColumnHandler.Tag.IGNORE) continue;
+			row[c] = handler.convert(emptyToNull(record.get(c)));
+		}
+		return row;
+	}
+
+	@Override
+	public void writeBatch(JanusGraph mainGraph, RowBatch batch) {
+		StandardJanusGraphTx graph = (StandardJanusGraphTx) newTransaction(mainGraph);
+		boolean derivedIds = keyMap.derivesVertexIds();
+		boolean checkIds = ! derivedIds && ! uniqueChecked;
+		List<Object> csvIds = new ArrayList<>(batch.size());
+		List<Object> reserved = new ArrayList<>(checkIds ? batch.size() : 0);
 		try {
-			do  {
-				if (this.currentParser == null) {
-						setupCSVParser(false);
-				}
-				for (CSVRecord record : currentParser) {
-					if (verticesCreated >= limitRows) break;
-					
-					int columns = Math.min(record.size(), this.columns.length);
-					JanusGraphVertex addedVertex = graph.addVertex(vertexLabelName);
-					addedVertex.property("_label", vertexLabelName);
-
-					for (int c = 0; c < columns; ++c) {
-						ColumnHandler handler = this.columns[c];
-						Tag tag = handler.getTag();
-						if (tag == ColumnHandler.Tag.IGNORE) continue;
-						
-						Object value = handler.convert(Strings.emptyToNull(record.get(c)));
-						if (value != null) {
-							addedVertex.property(handler.getName(), value);
-						}
-						if (tag == ColumnHandler.Tag.ID) {
-							if (keyMap.containsKey(value)) {
-								throw new RuntimeException("How did that happen? - Id " + value + " is also defined elsewhere");
-							}
-							keyMap.put(value, addedVertex.id());
-						}
-					}
-					if (++verticesCreated % 10000 == 0) {
-						graph.tx().commit();
-						graph.tx().close();
-						graph.close();
-						graph = mainGraph.newTransaction();
-						LOG.info("Created {} {} vertices in {} ms, {} ms/vertex", verticesCreated, vertexLabelName, watch.getTime(), (double) watch.getTime() / verticesCreated); 
+			VertexLabel label = resolveLabel(graph);
+			PropertyKey[] keys = plan.resolve(graph);
+			long[] vertexIds = new long[batch.size()];
+			for (Object[] row : batch.getRows()) {
+				if (idColumn != -1 && checkIds) {
+					// Reserved until mapped, as the id map only gets the ids once committed
+					Object value = row[idColumn];
+					Object key = IdMap.key(value);
+					if (keyMap.get(value) != IdMap.MISSING || ! reservedIds.add(key)) {
+						throw new RuntimeException("Id " + value + " is also defined elsewhere");
 					}
+					reserved.add(key);
+				}
+				JanusGraphVertex addedVertex = addVertex(graph, label, keys, row);
+				if (idColumn != -1) {
+					vertexIds[csvIds.size()] = addedVertex.longId();
+					csvIds.add(row[idColumn]);
+				}
+			}
+			commit(graph);
+			// Mapped only once committed, so a batch which is retried doesn't find its own ids
+			for (int i = 0; i < csvIds.size(); ++i) {
+				if (! keyMap.putIfAbsent(csvIds.get(i), vertexIds[i])) {
+					throw new RuntimeException("How did that happen? - Id " + csvIds.get(i) + " is also defined elsewhere");
+				}
+			}
+			checkpoint(batch, derivedIds ? null : csvIds, vertexIds);
+		} finally {
+			if (graph.tx().isOpen()) {
+				graph.tx().rollback();
+			}
+			reservedIds.removeAll(reserved);
+		}
+		addCreated(batch.size());
+	}
+
+	@Override
+	protected JanusGraphTransaction newTransaction(JanusGraph graph) {
+		if (! uniqueChecked) {
+			return graph.newTransaction();
+		}
+		return graph.buildTransaction()
+				.enableBatchLoading()
+				.consistencyChecks(false)
+				.start();
+	}
+
+	VertexLabel resolveLabel(StandardJanusGraphTx graph) {
+		return Objects.requireNonNull(graph.getVertexLabel(vertexLabelName), "No vertex label " + vertexLabelName);
+	}
+
+	PropertyKey[] resolveKeys(StandardJanusGraphTx graph) {
+		return plan.resolve(graph);
+	}
+
+	/**
+	 * Create the vertex of a converted row, with its properties.
+	 *
+	 * @param label The label, from {@link #resolveLabel(StandardJanusGraphTx)} in the same transaction
+	 * @param keys The property keys, from {@link #resolveKeys(StandardJanusGraphTx)} in the same transaction
+	 */
+	JanusGraphVertex addVertex(StandardJanusGraphTx graph, VertexLabel label, PropertyKey[] keys, Object[] row) {
+		JanusGraphVertex addedVertex = graph.addVertex(keyMap.derivesVertexIds() ? derivedVertexId(row) : null, label);
+		plan.addProperties(graph, addedVertex, keys, row, vertexLabelName);
+		return addedVertex;
+	}
+
+	/**
+	 * @return the value of the ID column of a converted row
+	 */
+	Object getId(Object[] row) {
+		if (idColumn == -1) {
+			throw new RuntimeException("No ID column in " + vertexLabelName);
+		}
+		return row[idColumn];
+	}
+
+	private long derivedVertexId(Object[] row) {
+		if (idColumn == -1) {
+			throw new RuntimeException("Deriving vertex ids requires an ID column in " + vertexLabelName);
+		}
+		long vertexId = keyMap.get(row[idColumn]);
+		if (vertexId == IdMap.MISSING) {
+			throw new RuntimeException("Cannot derive a vertex id from " + vertexLabelName + " id " + row[idColumn]);
+		}
+		return vertexId;
+	}
+
+	@Override
+	public void logProgress() {
+		long verticesCreated = elementsCreated.get();
+		LOG.info("Created {} {} vertices in {} ms, {} ms/vertex", verticesCreated, vertexLabelName, watch.getTime(), verticesCreated > 0 ? (double) watch.getTime() / verticesCreated : Double.NaN); 
+	}
+
+	/**
+	 * Add the values of the ID and UNIQUE columns of a chunk to the check.
+	 */
+	public void checkUnique(FileChunk chunk, int chunkIndex, UniquenessCheck check) throws IOException {
+		try (CsvTokenizer tokenizer = openChunk(chunk)) {
+			for (CsvRow record = tokenizer.next(); record != null; record = tokenizer.next()) {
+				int size = Math.min(record.size(), columns.length);
+				for (int c = 0; c < size; ++c) {
+					ColumnHandler<?> handler = columns[c];
+					if (handler.getTag() != ColumnHandler.Tag.ID && handler.getTag() != ColumnHandler.Tag.UNIQUE) continue;
+					CharSequence raw = emptyToNull(record.get(c));
+					if (raw == null) continue;
+					String group = handler.getTag() == ColumnHandler.Tag.ID ? UniquenessCheck.ID_GROUP : vertexLabelName + "." + handler.getName();
+					check.add(group, handler.getDatatype(), handler.convert(raw), chunkIndex, record.getLineNumber());
 				}
-				close();
-			} while (! files.isEmpty());
-			graph.tx().commit();
-			graph.tx().close();
-			graph.close();
-			LOG.info("Created {} {} vertices in {} ms, {} ms/vertex", verticesCreated, vertexLabelName, watch.getTime(), verticesCreated > 0 ? (double) watch.getTime() / verticesCreated : Double.NaN); 
-		} catch (IOException e) {
-			LOG.error("Error reading file or writing vertex", e);
+			}
 		}
 	}
+
 	public void parseHeaders(SchemaBuilder schemaBuilder) throws IOException {
-		setupCSVParser(true);
-		int maxColumn = currentParser.getHeaderMap().values().stream().mapToInt(Integer::intValue).max().getAsInt();
+		Map<String, Integer> headers = readHeader();
+		int maxColumn = headers.values().stream().mapToInt(Integer::intValue).max().getAsInt();
 		columns = new ColumnHandler[maxColumn+1];
 		VertexTypeBuilder vertexBuilder = schemaBuilder.vertex(vertexLabelName);
 		
-		this.currentParser.getHeaderMap().forEach((label, index) -> {
+		headers.forEach((label, index) -> {
 			ColumnHandler handler = makeColumnHandler(label);
 			columns[index] = handler;
+			if (handler.getTag() == ColumnHandler.Tag.ID) {
+				idColumn = index;
+			}
 			
 			// Now create the property
 			if (handler.getTag() == ColumnHandler.Tag.ID || handler.getTag() == ColumnHandler.Tag.UNIQUE) {
@@ -117,9 +234,23 @@ public class VertexFileHandler extends AbstractElementFileHandler implements Clo
 			}
 		});
 		vertexBuilder.build();
+		plan = WritePlan.forVertices(columns, labelProperty);
+		close();
 	}
 	public String getName() {
 		return vertexLabelName;
 	}
+
+	/**
+	 * @return the datatype of the ID column, or null if the file has none
+	 */
+	public Class<?> getIdType() {
+		for (ColumnHandler<?> handler : columns) {
+			if (handler.getTag() == ColumnHandler.Tag.ID) {
+				return handler.getDatatype();
+			}
+		}
+		return null;
+	}
 	
 }
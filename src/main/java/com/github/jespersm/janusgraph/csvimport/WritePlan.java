@@ -0,0 +1,118 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.github.jespersm.janusgraph.csvimport;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+import org.janusgraph.core.JanusGraphEdge;
+import org.janusgraph.core.JanusGraphVertex;
+import org.janusgraph.core.PropertyKey;
+import org.janusgraph.graphdb.transaction.StandardJanusGraphTx;
+
+import com.github.jespersm.janusgraph.csvimport.ColumnHandler.Tag;
+
+/**
+ * The columns of a file to write as properties, worked out once from its header, so writing
+ * a row neither looks at column tags nor skips columns. Schema types belong to a transaction,
+ * so the property keys are resolved by {@link #resolve(StandardJanusGraphTx)} once per batch.
+ */
+final class WritePlan {
+	static final String LABEL_PROPERTY = "_label";
+
+	private final int[] columns;
+	private final String[] names;
+	private final boolean labelProperty;
+
+	private WritePlan(int[] columns, String[] names, boolean labelProperty) {
+		this.columns = columns;
+		this.names = names;
+		this.labelProperty = labelProperty;
+	}
+
+	/**
+	 * @param skipped Tags of the columns which aren't properties
+	 * @param labelProperty Whether to copy the label into a {@value #LABEL_PROPERTY} property
+	 */
+	static WritePlan of(ColumnHandler<?>[] handlers, Set<Tag> skipped, boolean labelProperty) {
+		List<Integer> columns = new ArrayList<>();
+		for (int c = 0; c < handlers.length; ++c) {
+			if (handlers[c] != null && ! skipped.contains(handlers[c].getTag())) {
+				columns.add(c);
+			}
+		}
+		String[] names = new String[columns.size()];
+		for (int i = 0; i < names.length; ++i) {
+			names[i] = handlers[columns.get(i)].getName();
+		}
+		return new WritePlan(columns.stream().mapToInt(Integer::intValue).toArray(), names, labelProperty);
+	}
+
+	static WritePlan forVertices(ColumnHandler<?>[] handlers, boolean labelProperty) {
+		return of(handlers, EnumSet.of(Tag.IGNORE), labelProperty);
+	}
+
+	static WritePlan forEdges(ColumnHandler<?>[] handlers, boolean labelProperty) {
+		return of(handlers, EnumSet.of(Tag.IGNORE, Tag.START_ID, Tag.END_ID, Tag.TYPE), labelProperty);
+	}
+
+	/**
+	 * @return the property keys of the columns in the transaction, followed by the label property key if used
+	 */
+	PropertyKey[] resolve(StandardJanusGraphTx tx) {
+		PropertyKey[] keys = new PropertyKey[names.length + (labelProperty ? 1 : 0)];
+		for (int i = 0; i < names.length; ++i) {
+			keys[i] = Objects.requireNonNull(tx.getPropertyKey(names[i]), "No property key " + names[i]);
+		}
+		if (labelProperty) {
+			keys[names.length] = Objects.requireNonNull(tx.getPropertyKey(LABEL_PROPERTY), "No property key " + LABEL_PROPERTY);
+		}
+		return keys;
+	}
+
+	/**
+	 * Add the non-null values of a converted row to a vertex.
+	 *
+	 * @param keys As returned from {@link #resolve(StandardJanusGraphTx)} for the same transaction
+	 */
+	void addProperties(StandardJanusGraphTx tx, JanusGraphVertex vertex, PropertyKey[] keys, Object[] row, String label) {
+		if (labelProperty) {
+			tx.addProperty(vertex, keys[names.length], label);
+		}
+		for (int i = 0; i < columns.length; ++i) {
+			Object value = row[columns[i]];
+			if (value != null) {
+				tx.addProperty(vertex, keys[i], value);
+			}
+		}
+	}
+
+	/**
+	 * Add the non-null values of a converted row to an edge. JanusGraph has no public way of
+	 * setting an edge property by key, so these go by name.
+	 */
+	void addProperties(JanusGraphEdge edge, Object[] row, String label) {
+		if (labelProperty) {
+			edge.property(LABEL_PROPERTY, label);
+		}
+		for (int i = 0; i < columns.length; ++i) {
+			Object value = row[columns[i]];
+			if (value != null) {
+				edge.property(names[i], value);
+			}
+		}
+	}
+}
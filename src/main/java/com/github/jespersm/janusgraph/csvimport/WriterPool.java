@@ -0,0 +1,213 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package com.github.jespersm.janusgraph.csvimport;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.janusgraph.core.JanusGraph;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.jespersm.janusgraph.csvimport.commit.BackoffRetry;
+
+/**
+ * The write stage of the import: a fixed number of threads taking {@link RowBatch}es from a
+ * bounded queue and writing them to the graph. Parser threads block in {@link #submit(RowBatch)}
+ * when the writers fall behind, so memory use stays bounded.
+ *
+ * A batch failing with a transient backend error is written again after a backoff. A batch
+ * which still fails, or throws anything else, even an Error, aborts its handler, and makes
+ * {@link #finish()} fail the import. Should a writer stop all the same, batches for its queue
+ * are refused rather than waiting for it forever.
+ *
+ * A partitioned pool gives each writer a queue of its own, so batches submitted to the same
+ * partition are always written by the same thread.
+ */
+public class WriterPool implements BatchSink {
+	private static final Logger LOG = LoggerFactory.getLogger(WriterPool.class);
+	private static final RowBatch END = new RowBatch(null, null);
+	private static final long OFFER_WAIT_MILLIS = 100;
+
+	private final JanusGraph graph;
+	private final int threads;
+	private final List<BlockingQueue<RowBatch>> queues = new ArrayList<>();
+	private final List<AtomicInteger> liveWriters = new ArrayList<>();
+	private final ExecutorService executor;
+	private final BackoffRetry retry;
+	private final AtomicInteger failedBatches = new AtomicInteger();
+	private final AtomicInteger stoppedWriters = new AtomicInteger();
+
+	public WriterPool(JanusGraph graph, int threads, int queueCapacity, BackoffRetry retry) {
+		this(graph, threads, queueCapacity, retry, false);
+	}
+
+	/**
+	 * @param partitioned Whether each writer has a queue of its own, sharing the capacity
+	 */
+	public WriterPool(JanusGraph graph, int threads, int queueCapacity, BackoffRetry retry, boolean partitioned) {
+		this.graph = graph;
+		this.retry = retry;
+		this.threads = threads;
+		ThreadFactory factory = Executors.defaultThreadFactory();
+		this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+			// Daemons, so writers left waiting by a phase which failed don't keep the JVM alive
+			Thread thread = factory.newThread(runnable);
+			thread.setDaemon(true);
+			return thread;
+		});
+		if (partitioned) {
+			for (int i = 0; i < threads; ++i) {
+				queues.add(new ArrayBlockingQueue<>(Math.max(1, queueCapacity / threads)));
+			}
+		} else {
+			queues.add(new ArrayBlockingQueue<>(queueCapacity));
+		}
+		for (int i = 0; i < queues.size(); ++i) {
+			liveWriters.add(new AtomicInteger());
+		}
+		for (int i = 0; i < threads; ++i) {
+			BlockingQueue<RowBatch> queue = queues.get(i % queues.size());
+			AtomicInteger writers = liveWriters.get(i % queues.size());
+			writers.incrementAndGet();
+			executor.execute(() -> drain(queue, writers));
+		}
+	}
+
+	/**
+	 * @return the number of partitions which {@link #submit(RowBatch, int)} accepts, 1 unless partitioned
+	 */
+	public int getPartitions() {
+		return queues.size();
+	}
+
+	/**
+	 * @return the number of batches waiting for a writer
+	 */
+	public int getQueueDepth() {
+		int depth = 0;
+		for (BlockingQueue<RowBatch> queue : queues) {
+			depth += queue.size();
+		}
+		return depth;
+	}
+
+	@Override
+	public void submit(RowBatch batch) throws InterruptedException {
+		submit(batch, 0);
+	}
+
+	/**
+	 * Submit a batch to be written by the writer of the given partition.
+	 */
+	public void submit(RowBatch batch, int partition) throws InterruptedException {
+		batch.getHandler().workAdded();
+		if (! put(batch, partition % queues.size())) {
+			batch.getHandler().workDone();
+			throw new RuntimeException("The writers of " + batch.getHandler().getDescription() + " have stopped, see the log for the errors");
+		}
+	}
+
+	/**
+	 * Queue the batch, unless the writers of the queue have stopped.
+	 */
+	private boolean put(RowBatch batch, int queueIndex) throws InterruptedException {
+		BlockingQueue<RowBatch> queue = queues.get(queueIndex);
+		while (! queue.offer(batch, OFFER_WAIT_MILLIS, TimeUnit.MILLISECONDS)) {
+			if (liveWriters.get(queueIndex).get() == 0) return false;
+		}
+		return true;
+	}
+
+	private void drain(BlockingQueue<RowBatch> queue, AtomicInteger writers) {
+		boolean ended = false;
+		try {
+			for (RowBatch batch = queue.take(); batch != END; batch = queue.take()) {
+				try {
+					write(batch);
+				} catch (InterruptedException e) {
+					throw e;
+				} catch (Throwable e) {
+					// Even an Error mustn't leave the queue without a writer
+					failed(batch, e, 0);
+				} finally {
+					batch.getHandler().workDone();
+				}
+			}
+			ended = true;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			writers.decrementAndGet();
+			if (! ended) {
+				stoppedWriters.incrementAndGet();
+			}
+		}
+	}
+
+	private void write(RowBatch batch) throws InterruptedException {
+		BatchWriter handler = batch.getHandler();
+		for (int retries = 0; ; ++retries) {
+			long started = System.nanoTime();
+			try {
+				handler.writeBatch(graph, batch);
+				handler.getMetrics().written(System.nanoTime() - started);
+				handler.getCommitPolicy().transactionDone(batch.size(), batch.getEstimatedBytes(), System.nanoTime() - started, false);
+				return;
+			} catch (Exception e) {
+				handler.getCommitPolicy().transactionDone(batch.size(), batch.getEstimatedBytes(), System.nanoTime() - started, true);
+				if (! retry.shouldRetry(e, retries)) {
+					failed(batch, e, retries);
+					return;
+				}
+				handler.getMetrics().retried();
+				long backoff = retry.backoffMillis(retries);
+				LOG.warn("Transient error writing {} for {}, retry {} of {} in {} ms: {}", batch, handler.getDescription(), retries + 1, retry.getMaxRetries(), backoff, e.toString());
+				Thread.sleep(backoff);
+			}
+		}
+	}
+
+	private void failed(RowBatch batch, Throwable e, int retries) {
+		BatchWriter handler = batch.getHandler();
+		LOG.error("Error writing " + batch + " for " + handler.getDescription() + (retries > 0 ? " after " + retries + " retries" : ""), e);
+		failedBatches.incrementAndGet();
+		handler.getMetrics().failed();
+		handler.abort();
+	}
+
+	/**
+	 * Let the writers finish the queued batches, and wait for them to stop.
+	 * Fails if any batch couldn't be written.
+	 */
+	public void finish() throws InterruptedException {
+		for (int i = 0; i < threads; ++i) {
+			put(END, i % queues.size());
+		}
+		Import.awaitTerminationAfterShutdown(executor);
+		if (stoppedWriters.get() > 0) {
+			throw new RuntimeException(stoppedWriters.get() + " writer(s) stopped before finishing, see the log for the errors");
+		}
+		if (failedBatches.get() > 0) {
+			throw new RuntimeException(failedBatches.get() + " batch(es) could not be written, see the log for the errors");
+		}
+	}
+}
@@ -0,0 +1,258 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package com.github.jespersm.janusgraph.csvimport.checkpoint;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.jespersm.janusgraph.csvimport.idmap.IdMap;
+import com.github.jespersm.janusgraph.csvimport.input.FileChunk;
+
+/**
+ * An append-only log of committed batches, so an interrupted import can be resumed.
+ *
+ * Each entry is written and forced to disk after the transaction of a batch commits. It names
+ * the chunk and the range of records the batch covered, along with the CSV ids and vertex ids
+ * of the vertices it created, so the id map can be rebuilt without reading the graph. Entries
+ * are framed with their length and a CRC32, and a torn entry at the end is discarded on resume.
+ *
+ * A crash between a commit and the write of its entry means that batch is written again.
+ */
+public class CheckpointLog implements Closeable {
+	private static final Logger LOG = LoggerFactory.getLogger(CheckpointLog.class);
+	private static final String FILE_NAME = "checkpoint.log";
+
+	private final File file;
+	private final FileChannel channel;
+	private final Map<String, ChunkProgress> progress = new HashMap<>();
+
+	/**
+	 * @param directory Where to keep the log
+	 * @param resume Load the log of an earlier run, rather than starting a new one
+	 */
+	public CheckpointLog(File directory, boolean resume) throws IOException {
+		if (! directory.isDirectory() && ! directory.mkdirs()) {
+			throw new IOException("Cannot create checkpoint directory " + directory);
+		}
+		this.file = new File(directory, FILE_NAME);
+		if (resume && ! file.isFile()) {
+			throw new IOException("No checkpoint to resume from in " + directory);
+		}
+		this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		if (resume) {
+			long valid = replay(null);
+			if (valid < channel.size()) {
+				LOG.warn("Discarding {} bytes of incomplete checkpoint at the end of {}", channel.size() - valid, file);
+				channel.truncate(valid);
+			}
+			LOG.info("Resuming from {} with {} checkpointed chunks", file, progress.size());
+		} else {
+			channel.truncate(0);
+		}
+		channel.position(channel.size());
+	}
+
+	/**
+	 * @return the records committed for the chunk by earlier runs
+	 */
+	public ChunkProgress progress(FileChunk chunk) {
+		return progress.getOrDefault(key(chunk), ChunkProgress.NONE);
+	}
+
+	/**
+	 * Fail if the log has chunks of the given files which aren't among the chunks, which happens
+	 * when resuming with a different --chunk-size or --multiline-fields.
+	 */
+	public void verify(Collection<FileChunk> chunks) {
+		Set<String> files = chunks.stream().map(chunk -> chunk.getFile().getPath()).collect(Collectors.toSet());
+		Set<String> keys = chunks.stream().map(CheckpointLog::key).collect(Collectors.toSet());
+		for (String key : progress.keySet()) {
+			if (files.contains(key.substring(0, key.lastIndexOf('@'))) && ! keys.contains(key)) {
+				throw new RuntimeException("Checkpoint of chunk " + key + " doesn't match the chunks of this run, resume with the same chunk options");
+			}
+		}
+	}
+
+	/**
+	 * Put the id mappings of all checkpointed vertices into the map.
+	 */
+	public void restoreIds(IdMap keyMap) throws IOException {
+		replay(keyMap);
+		LOG.info("Restored {} ids from {}", keyMap.size(), file);
+	}
+
+	/**
+	 * Record that a batch was committed. Called from writer threads.
+	 *
+	 * @param after The record number before the first one of the batch
+	 * @param through The last record number of the batch
+	 * @param endsChunk Whether the batch ends with the last record of the chunk
+	 * @param csvIds The ids of the vertices created, if any
+	 * @param vertexIds The vertex ids, in the same order
+	 */
+	public void committed(FileChunk chunk, long after, long through, boolean endsChunk, List<Object> csvIds, long[] vertexIds) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (DataOutputStream out = new DataOutputStream(bytes)) {
+			out.writeInt(0);
+			out.writeInt(0);
+			out.writeUTF(key(chunk));
+			out.writeLong(after);
+			out.writeLong(through);
+			out.writeBoolean(endsChunk);
+			int count = csvIds != null ? csvIds.size() : 0;
+			out.writeInt(count);
+			for (int i = 0; i < count; ++i) {
+				writeId(out, csvIds.get(i));
+				out.writeLong(vertexIds[i]);
+			}
+		}
+		ByteBuffer entry = ByteBuffer.wrap(bytes.toByteArray());
+		CRC32 crc = new CRC32();
+		crc.update(entry.array(), 8, entry.limit() - 8);
+		entry.putInt(0, entry.limit() - 8);
+		entry.putInt(4, (int) crc.getValue());
+		synchronized (channel) {
+			while (entry.hasRemaining()) {
+				channel.write(entry);
+			}
+			channel.force(false);
+		}
+	}
+
+	/**
+	 * Read the valid entries of the log, recording the progress of each chunk, and the ids if a map is given.
+	 *
+	 * @return the length of the valid part of the log
+	 */
+	private long replay(IdMap keyMap) throws IOException {
+		long valid = 0;
+		progress.clear();
+		InputStream stream = Channels.newInputStream(channel.position(0));
+		DataInputStream in = new DataInputStream(new BufferedInputStream(stream));
+		try {
+			while (true) {
+				int length = in.readInt();
+				int checksum = in.readInt();
+				if (length < 0 || length > channel.size() - valid - 8) break;
+				byte[] payload = new byte[length];
+				in.readFully(payload);
+				CRC32 crc = new CRC32();
+				crc.update(payload);
+				if ((int) crc.getValue() != checksum) break;
+				readEntry(new DataInputStream(new ByteArrayInputStream(payload)), keyMap);
+				valid += 8 + length;
+			}
+		} catch (EOFException e) {
+			// A torn entry at the end
+		}
+		channel.position(channel.size());
+		return valid;
+	}
+
+	private void readEntry(DataInputStream in, IdMap keyMap) throws IOException {
+		String key = in.readUTF();
+		long after = in.readLong();
+		long through = in.readLong();
+		boolean endsChunk = in.readBoolean();
+		progress.computeIfAbsent(key, k -> new ChunkProgress()).add(after, through, endsChunk);
+		if (keyMap == null) return;
+		int count = in.readInt();
+		for (int i = 0; i < count; ++i) {
+			Object csvId = readId(in);
+			keyMap.putIfAbsent(csvId, in.readLong());
+		}
+	}
+
+	private static String key(FileChunk chunk) {
+		return chunk.getFile().getPath() + "@" + chunk.getStart() + "-" + chunk.getEnd();
+	}
+
+	private static void writeId(DataOutputStream out, Object csvId) throws IOException {
+		if (csvId instanceof Long) {
+			out.writeByte('J');
+			out.writeLong((Long) csvId);
+		} else if (csvId instanceof Integer) {
+			out.writeByte('I');
+			out.writeInt((Integer) csvId);
+		} else if (csvId instanceof Short) {
+			out.writeByte('S');
+			out.writeShort((Short) csvId);
+		} else if (csvId instanceof Byte) {
+			out.writeByte('B');
+			out.writeByte((Byte) csvId);
+		} else if (csvId instanceof UUID) {
+			out.writeByte('U');
+			out.writeLong(((UUID) csvId).getMostSignificantBits());
+			out.writeLong(((UUID) csvId).getLeastSignificantBits());
+		} else if (csvId instanceof String) {
+			byte[] utf8 = ((String) csvId).getBytes(StandardCharsets.UTF_8);
+			out.writeByte('T');
+			out.writeInt(utf8.length);
+			out.write(utf8);
+		} else {
+			throw new IllegalArgumentException("Cannot checkpoint ids of type " + csvId.getClass().getSimpleName());
+		}
+	}
+
+	private static Object readId(DataInputStream in) throws IOException {
+		byte type = in.readByte();
+		switch (type) {
+		case 'J':
+			return in.readLong();
+		case 'I':
+			return in.readInt();
+		case 'S':
+			return in.readShort();
+		case 'B':
+			return in.readByte();
+		case 'U':
+			return new UUID(in.readLong(), in.readLong());
+		case 'T':
+			byte[] utf8 = new byte[in.readInt()];
+			in.readFully(utf8);
+			return new String(utf8, StandardCharsets.UTF_8);
+		default:
+			throw new IOException("Unknown id type " + (char) type + " in checkpoint");
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+}
@@ -0,0 +1,82 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package com.github.jespersm.janusgraph.csvimport.checkpoint;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The records of one chunk which were committed by an earlier run, as ranges of record numbers.
+ * Batches may commit out of order, and a failed batch leaves a gap, so this is a set of ranges
+ * rather than a single position.
+ */
+public class ChunkProgress {
+	public static final ChunkProgress NONE = new ChunkProgress();
+
+	private final TreeMap<Long, Long> ranges = new TreeMap<>();
+	private long recordCount = -1;
+
+	/**
+	 * @param after The record number before the first one of the range
+	 * @param through The last record number of the range
+	 * @param endsChunk Whether the range ends with the last record of the chunk
+	 */
+	void add(long after, long through, boolean endsChunk) {
+		if (endsChunk) {
+			recordCount = through;
+		}
+		long first = after + 1;
+		long last = through;
+		Map.Entry<Long, Long> before = ranges.floorEntry(first);
+		if (before != null && before.getValue() >= first - 1) {
+			first = before.getKey();
+			last = Math.max(last, before.getValue());
+		}
+		for (Map.Entry<Long, Long> next = ranges.ceilingEntry(first); next != null && next.getKey() <= last + 1; next = ranges.ceilingEntry(first)) {
+			last = Math.max(last, next.getValue());
+			ranges.remove(next.getKey());
+		}
+		if (first <= last) {
+			ranges.put(first, last);
+		}
+	}
+
+	/**
+	 * @param recordNumber The 1-based record number within the chunk
+	 */
+	public boolean isCommitted(long recordNumber) {
+		Map.Entry<Long, Long> range = ranges.floorEntry(recordNumber);
+		return range != null && recordNumber <= range.getValue();
+	}
+
+	/**
+	 * @return true if every record of the chunk was committed
+	 */
+	public boolean isDone() {
+		if (recordCount == 0) return true;
+		Map.Entry<Long, Long> first = ranges.firstEntry();
+		return recordCount > 0 && first != null && first.getKey() == 1 && first.getValue() >= recordCount;
+	}
+
+	/**
+	 * @return the number of committed records
+	 */
+	public long committedRecords() {
+		long count = 0;
+		for (Map.Entry<Long, Long> range : ranges.entrySet()) {
+			count += range.getValue() - range.getKey() + 1;
+		}
+		return count;
+	}
+}
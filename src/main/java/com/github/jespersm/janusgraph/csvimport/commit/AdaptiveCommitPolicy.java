@@ -0,0 +1,70 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package com.github.jespersm.janusgraph.csvimport.commit;
+
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Tunes the number of rows per transaction so that transactions take about the target time.
+ *
+ * The time per row is tracked as a moving average over the reported transactions, and the
+ * batch size moves a quarter of the way towards the size which would hit the target each
+ * time. A failed transaction halves the batch size at once.
+ */
+public class AdaptiveCommitPolicy implements CommitPolicy {
+	private static final Logger LOG = LoggerFactory.getLogger(AdaptiveCommitPolicy.class);
+	private static final int MIN_ROWS = 100;
+	private static final double SMOOTHING = 0.2;
+
+	private final long targetNanos;
+	private final int maxRows;
+	private volatile int rows;
+	private double nanosPerRow = Double.NaN;
+
+	public AdaptiveCommitPolicy(int initialRows, long targetMillis) {
+		this.rows = Math.max(MIN_ROWS, initialRows);
+		this.maxRows = Math.max(this.rows, initialRows * 10);
+		this.targetNanos = TimeUnit.MILLISECONDS.toNanos(targetMillis);
+	}
+
+	@Override
+	public boolean isFull(int rows, long estimatedBytes) {
+		return rows >= this.rows;
+	}
+
+	@Override
+	public synchronized void transactionDone(int rows, long estimatedBytes, long nanos, boolean failed) {
+		int current = this.rows;
+		if (failed) {
+			this.rows = Math.max(MIN_ROWS, current / 2);
+		} else if (rows > 0) {
+			double observed = (double) nanos / rows;
+			nanosPerRow = Double.isNaN(nanosPerRow) ? observed : nanosPerRow + SMOOTHING * (observed - nanosPerRow);
+			double ideal = targetNanos / nanosPerRow;
+			int next = (int) Math.round(current + (ideal - current) / 4);
+			this.rows = Math.max(MIN_ROWS, Math.min(maxRows, next));
+		}
+		if (this.rows != current) {
+			LOG.debug("Batch size {} -> {} rows after {} rows in {} ms{}", current, this.rows, rows, TimeUnit.NANOSECONDS.toMillis(nanos), failed ? " (failed)" : "");
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "commit after about " + TimeUnit.NANOSECONDS.toMillis(targetNanos) + " ms, currently " + rows + " rows";
+	}
+}
@@ -0,0 +1,73 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package com.github.jespersm.janusgraph.csvimport.commit;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.janusgraph.diskstorage.TemporaryBackendException;
+
+/**
+ * Decides whether a failed transaction is worth retrying, and how long to wait first.
+ *
+ * Only failures caused by a {@link TemporaryBackendException}, such as storage timeouts and
+ * lock contention, are retried. The wait is drawn at random between half and all of a ceiling
+ * which doubles with each retry, so writers failing together don't retry together.
+ */
+public class BackoffRetry {
+	private final int maxRetries;
+	private final long initialMillis;
+	private final long maxMillis;
+
+	public BackoffRetry(int maxRetries, long initialMillis, long maxMillis) {
+		this.maxRetries = maxRetries;
+		this.initialMillis = Math.max(1, initialMillis);
+		this.maxMillis = Math.max(this.initialMillis, maxMillis);
+	}
+
+	public int getMaxRetries() {
+		return maxRetries;
+	}
+
+	/**
+	 * @param failure What the write failed with
+	 * @param retries The number of retries done so far
+	 * @return true if the write should be tried again
+	 */
+	public boolean shouldRetry(Throwable failure, int retries) {
+		return retries < maxRetries && isTransient(failure);
+	}
+
+	/**
+	 * @param retries The number of retries done so far
+	 * @return the number of milliseconds to wait before the next one
+	 */
+	public long backoffMillis(int retries) {
+		long ceiling = Math.min(maxMillis, initialMillis << Math.min(retries, 30));
+		return ThreadLocalRandom.current().nextLong(ceiling / 2, ceiling + 1);
+	}
+
+	public static boolean isTransient(Throwable failure) {
+		for (Throwable t = failure; t != null; t = t.getCause() == t ? null : t.getCause()) {
+			if (t instanceof TemporaryBackendException) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public String toString() {
+		return "up to " + maxRetries + " retries, backing off from " + initialMillis + " to " + maxMillis + " ms";
+	}
+}
@@ -0,0 +1,35 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package com.github.jespersm.janusgraph.csvimport.commit;
+
+/**
+ * Decides how many rows go into each transaction. Parser threads ask {@link #isFull(int, long)}
+ * as they fill a batch, writer threads report back how each transaction went.
+ */
+public interface CommitPolicy {
+	enum Kind { ROWS, BYTES, ADAPTIVE }
+
+	/**
+	 * @param rows Rows in the batch so far
+	 * @param estimatedBytes Estimated size of the mutations for those rows
+	 * @return true if the batch should be handed to a writer now
+	 */
+	boolean isFull(int rows, long estimatedBytes);
+
+	/**
+	 * Called after each transaction, successful or not.
+	 */
+	default void transactionDone(int rows, long estimatedBytes, long nanos, boolean failed) {
+	}
+}
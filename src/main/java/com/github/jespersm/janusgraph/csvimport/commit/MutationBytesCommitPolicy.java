@@ -0,0 +1,38 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package com.github.jespersm.janusgraph.csvimport.commit;
+
+/**
+ * Commits when the estimated size of the mutations reaches a cap, so wide rows make for
+ * shorter transactions and narrow rows for longer ones. The row count is capped as well.
+ */
+public class MutationBytesCommitPolicy implements CommitPolicy {
+	private final long bytes;
+	private final int maxRows;
+
+	public MutationBytesCommitPolicy(long bytes, int maxRows) {
+		this.bytes = bytes;
+		this.maxRows = maxRows;
+	}
+
+	@Override
+	public boolean isFull(int rows, long estimatedBytes) {
+		return estimatedBytes >= bytes || rows >= maxRows;
+	}
+
+	@Override
+	public String toString() {
+		return "commit every " + (bytes >> 10) + " KB or " + maxRows + " rows";
+	}
+}
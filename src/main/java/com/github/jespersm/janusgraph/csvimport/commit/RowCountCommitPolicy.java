@@ -0,0 +1,35 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package com.github.jespersm.janusgraph.csvimport.commit;
+
+/**
+ * Commits every fixed number of rows, however wide they are.
+ */
+public class RowCountCommitPolicy implements CommitPolicy {
+	private final int rows;
+
+	public RowCountCommitPolicy(int rows) {
+		this.rows = rows;
+	}
+
+	@Override
+	public boolean isFull(int rows, long estimatedBytes) {
+		return rows >= this.rows;
+	}
+
+	@Override
+	public String toString() {
+		return "commit every " + rows + " rows";
+	}
+}
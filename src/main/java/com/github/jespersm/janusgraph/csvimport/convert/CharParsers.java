@@ -0,0 +1,227 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package com.github.jespersm.janusgraph.csvimport.convert;
+
+import java.util.UUID;
+
+/**
+ * Parsers for the common column types, working directly on a {@link CharSequence} so no String
+ * is needed for the field. The only allocation is the boxed result, and small integers and
+ * booleans come from the JDK caches. Input these don't handle on their fast path is passed to
+ * the JDK parser, so they accept and reject the same input as the valueOf methods they replace.
+ */
+public final class CharParsers {
+	private static final long MAX_EXACT_MANTISSA = 1L << 53;
+	private static final double[] POWERS_OF_TEN = {
+			1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+			1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+	private CharParsers() {
+	}
+
+	public static Long toLong(CharSequence chars) {
+		return parseLong(chars);
+	}
+
+	public static Integer toInteger(CharSequence chars) {
+		return (int) parseLong(chars, Integer.MIN_VALUE, Integer.MAX_VALUE);
+	}
+
+	public static Short toShort(CharSequence chars) {
+		return (short) parseLong(chars, Short.MIN_VALUE, Short.MAX_VALUE);
+	}
+
+	public static Byte toByte(CharSequence chars) {
+		return (byte) parseLong(chars, Byte.MIN_VALUE, Byte.MAX_VALUE);
+	}
+
+	public static Double toDouble(CharSequence chars) {
+		return parseDouble(chars);
+	}
+
+	public static Boolean toBoolean(CharSequence chars) {
+		return parseBoolean(chars);
+	}
+
+	public static UUID toUUID(CharSequence chars) {
+		return parseUUID(chars);
+	}
+
+	public static long parseLong(CharSequence chars) {
+		return parseLong(chars, Long.MIN_VALUE, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Parse a decimal integer like {@link Long#parseLong(String)}, checking it is within [min, max].
+	 */
+	public static long parseLong(CharSequence chars, long min, long max) {
+		try {
+			return parseAsciiLong(chars, min, max);
+		} catch (NumberFormatException e) {
+			// The JDK also takes the digits of other scripts
+			long value = Long.parseLong(chars.toString());
+			if (value < min || value > max) {
+				throw numberFormat(chars);
+			}
+			return value;
+		}
+	}
+
+	/**
+	 * Parse a decimal integer of ASCII digits, as an exponent must be for {@link Double#parseDouble(String)}.
+	 */
+	private static long parseAsciiLong(CharSequence chars, long min, long max) {
+		int length = chars.length();
+		int i = 0;
+		boolean negative = false;
+		if (length > 0 && (chars.charAt(0) == '-' || chars.charAt(0) == '+')) {
+			negative = chars.charAt(0) == '-';
+			i = 1;
+		}
+		if (i == length) {
+			throw numberFormat(chars);
+		}
+		// Accumulate negatively, as Long.MIN_VALUE has no positive counterpart
+		long limit = negative ? min : -max;
+		long multiplyLimit = limit / 10;
+		long result = 0;
+		for (; i < length; ++i) {
+			int digit = chars.charAt(i) - '0';
+			if (digit < 0 || digit > 9 || result < multiplyLimit) {
+				throw numberFormat(chars);
+			}
+			result *= 10;
+			if (result < limit + digit) {
+				throw numberFormat(chars);
+			}
+			result -= digit;
+		}
+		return negative ? result : -result;
+	}
+
+	/**
+	 * Parse a decimal floating point number like {@link Double#parseDouble(String)}. Numbers with
+	 * at most 15 significant digits and a small exponent are computed exactly from a long mantissa,
+	 * anything else goes through the JDK.
+	 */
+	public static double parseDouble(CharSequence chars) {
+		int length = chars.length();
+		int i = 0;
+		boolean negative = false;
+		if (length > 0 && (chars.charAt(0) == '-' || chars.charAt(0) == '+')) {
+			negative = chars.charAt(0) == '-';
+			i = 1;
+		}
+		long mantissa = 0;
+		int digits = 0;
+		int scale = 0;
+		boolean seenPoint = false;
+		boolean seenDigit = false;
+		for (; i < length; ++i) {
+			char c = chars.charAt(i);
+			if (c >= '0' && c <= '9') {
+				seenDigit = true;
+				if (mantissa == 0 && c == '0') {
+					if (seenPoint) --scale;
+					continue;
+				}
+				if (++digits > 15) {
+					return Double.parseDouble(chars.toString());
+				}
+				mantissa = mantissa * 10 + (c - '0');
+				if (seenPoint) --scale;
+			} else if (c == '.' && ! seenPoint) {
+				seenPoint = true;
+			} else {
+				break;
+			}
+		}
+		if (i < length) {
+			char c = chars.charAt(i);
+			if (! seenDigit || (c != 'e' && c != 'E')) {
+				return Double.parseDouble(chars.toString());
+			}
+			int exponent;
+			try {
+				exponent = (int) parseAsciiLong(chars.subSequence(i + 1, length), -9999, 9999);
+			} catch (NumberFormatException e) {
+				return Double.parseDouble(chars.toString());
+			}
+			scale += exponent;
+		} else if (! seenDigit) {
+			return Double.parseDouble(chars.toString());
+		}
+		double value;
+		if (mantissa == 0) {
+			value = 0.0;
+		} else if (mantissa < MAX_EXACT_MANTISSA && scale >= 0 && scale < POWERS_OF_TEN.length) {
+			value = mantissa * POWERS_OF_TEN[scale];
+		} else if (mantissa < MAX_EXACT_MANTISSA && scale < 0 && -scale < POWERS_OF_TEN.length) {
+			value = mantissa / POWERS_OF_TEN[-scale];
+		} else {
+			return Double.parseDouble(chars.toString());
+		}
+		return negative ? -value : value;
+	}
+
+	/**
+	 * @return true if the characters are "true", ignoring case, like {@link Boolean#parseBoolean(String)}
+	 */
+	public static boolean parseBoolean(CharSequence chars) {
+		if (chars.length() != 4) return false;
+		return Character.toLowerCase(chars.charAt(0)) == 't'
+				&& Character.toLowerCase(chars.charAt(1)) == 'r'
+				&& Character.toLowerCase(chars.charAt(2)) == 'u'
+				&& Character.toLowerCase(chars.charAt(3)) == 'e';
+	}
+
+	/**
+	 * Parse the canonical 36 character form of a UUID, leaving other forms to {@link UUID#fromString(String)}.
+	 */
+	public static UUID parseUUID(CharSequence chars) {
+		if (chars.length() != 36 || chars.charAt(8) != '-' || chars.charAt(13) != '-'
+				|| chars.charAt(18) != '-' || chars.charAt(23) != '-') {
+			return UUID.fromString(chars.toString());
+		}
+		long group1 = hex(chars, 0, 8);
+		long group2 = hex(chars, 9, 13);
+		long group3 = hex(chars, 14, 18);
+		long group4 = hex(chars, 19, 23);
+		long group5 = hex(chars, 24, 36);
+		if ((group1 | group2 | group3 | group4 | group5) < 0) {
+			// Such as a sign, which the JDK takes or rejects depending on its version
+			return UUID.fromString(chars.toString());
+		}
+		return new UUID((group1 << 32) | (group2 << 16) | group3, (group4 << 48) | group5);
+	}
+
+	/**
+	 * @return the value of the hex digits, or -1 if there's anything else
+	 */
+	private static long hex(CharSequence chars, int start, int end) {
+		long value = 0;
+		for (int i = start; i < end; ++i) {
+			int digit = Character.digit(chars.charAt(i), 16);
+			if (digit < 0) {
+				return -1;
+			}
+			value = (value << 4) | digit;
+		}
+		return value;
+	}
+
+	private static NumberFormatException numberFormat(CharSequence chars) {
+		return new NumberFormatException("For input string: \"" + chars + "\"");
+	}
+}
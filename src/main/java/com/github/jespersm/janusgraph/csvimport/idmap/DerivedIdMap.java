@@ -0,0 +1,77 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package com.github.jespersm.janusgraph.csvimport.idmap;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongUnaryOperator;
+
+/**
+ * An {@link IdMap} which stores nothing: the vertex id is computed from the CSV id, and
+ * vertices are created with that id (which requires graph.set-vertex-id=true).
+ * {@link #get(Object)} therefore can't tell whether a vertex exists, only whether the id
+ * can be encoded.
+ *
+ * Since every vertex file shares one id space, the encoding is the same for all labels,
+ * and edges can be resolved without knowing the label of their endpoints, even in a
+ * later run which only loads edges.
+ */
+public class DerivedIdMap implements IdMap {
+	private final long countBound;
+	private final LongUnaryOperator toVertexId;
+	private final AtomicLong size = new AtomicLong();
+
+	/**
+	 * @param countBound Exclusive upper bound of the user ids accepted by toVertexId
+	 * @param toVertexId Turns a positive user id into a valid vertex id
+	 */
+	public DerivedIdMap(long countBound, LongUnaryOperator toVertexId) {
+		this.countBound = countBound;
+		this.toVertexId = toVertexId;
+	}
+
+	@Override
+	public boolean derivesVertexIds() {
+		return true;
+	}
+
+	@Override
+	public boolean putIfAbsent(Object csvId, long vertexId) {
+		long derived = get(csvId);
+		if (derived == MISSING) {
+			throw new IllegalArgumentException("Id " + csvId + " must be an integral number from 0 to " + (countBound - 2));
+		}
+		if (vertexId != derived) {
+			throw new IllegalArgumentException("Vertex for id " + csvId + " wasn't created with its derived id");
+		}
+		size.incrementAndGet();
+		return true;
+	}
+
+	@Override
+	public long get(Object csvId) {
+		if (! (csvId instanceof Number)) {
+			return MISSING;
+		}
+		long id = ((Number) csvId).longValue();
+		if (id < 0 || id >= countBound - 1) {
+			return MISSING;
+		}
+		return toVertexId.applyAsLong(id + 1);
+	}
+
+	@Override
+	public long size() {
+		return size.get();
+	}
+}
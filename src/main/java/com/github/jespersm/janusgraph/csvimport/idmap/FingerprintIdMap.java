@@ -0,0 +1,141 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.github.jespersm.janusgraph.csvimport.idmap;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+/**
+ * {@link IdMap} for string and UUID ids, which stores a 128 bit fingerprint of each id instead
+ * of the id itself.
+ *
+ * The first 64 bits of the fingerprint are the key of the primary map, holding the vertex id.
+ * The remaining bits are kept in a second map under the same key, and tell a duplicate id
+ * apart from a different id whose first 64 bits collide. Colliding ids are stored exactly
+ * in a side table, so lookups return the same answers as a map keyed by the ids themselves.
+ */
+public class FingerprintIdMap implements IdMap {
+	private static final Logger LOG = LoggerFactory.getLogger(FingerprintIdMap.class);
+	private static final HashFunction HASH = Hashing.murmur3_128();
+	private static final int LOCK_BITS = 6;
+
+	private final LongKeyIdMap primary;
+	private final LongKeyIdMap check;
+	private final ConcurrentHashMap<Object, Long> collisions = new ConcurrentHashMap<>();
+	private final Object[] locks = new Object[1 << LOCK_BITS];
+
+	public FingerprintIdMap(LongKeyIdMap primary, LongKeyIdMap check) {
+		this.primary = primary;
+		this.check = check;
+		for (int i = 0; i < locks.length; ++i) {
+			locks[i] = new Object();
+		}
+	}
+
+	@Override
+	public boolean putIfAbsent(Object csvId, long vertexId) {
+		ByteBuffer fingerprint = fingerprint(csvId);
+		long key = fingerprint.getLong(0);
+		long checkValue = checkValue(fingerprint.getLong(8));
+		synchronized (locks[(int) (key >>> (64 - LOCK_BITS))]) {
+			if (collisions.containsKey(IdMap.key(csvId))) {
+				return false;
+			}
+			if (primary.putIfAbsent(key, vertexId)) {
+				check.putIfAbsent(key, checkValue);
+				return true;
+			}
+			if (check.get(key) == checkValue) {
+				return false;
+			}
+			LOG.debug("Fingerprint of id {} collides, keeping it in the side table", csvId);
+			return collisions.putIfAbsent(IdMap.key(csvId), vertexId) == null;
+		}
+	}
+
+	@Override
+	public long get(Object csvId) {
+		if (! collisions.isEmpty()) {
+			Long vertexId = collisions.get(IdMap.key(csvId));
+			if (vertexId != null) return vertexId;
+		}
+		ByteBuffer fingerprint = fingerprint(csvId);
+		long key = fingerprint.getLong(0);
+		long vertexId = primary.get(key);
+		if (vertexId == MISSING || check.get(key) != checkValue(fingerprint.getLong(8))) {
+			return MISSING;
+		}
+		return vertexId;
+	}
+
+	@Override
+	public long size() {
+		return primary.size() + collisions.size();
+	}
+
+	@Override
+	public long estimatedBytes() {
+		return primary.estimatedBytes() + check.estimatedBytes() + collisions.size() * 96L;
+	}
+
+	@Override
+	public void freeze() throws IOException {
+		primary.freeze();
+		check.freeze();
+		LOG.info("Fingerprinted {} ids, {} of them colliding", size(), collisions.size());
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			primary.close();
+		} finally {
+			check.close();
+		}
+	}
+
+	/**
+	 * The id is hashed after a tag of its type, so the string "5" and the number 5 stay apart
+	 * as they do in the exact maps. Integral numbers share a tag, like in {@link LongIdMap}.
+	 */
+	private static ByteBuffer fingerprint(Object csvId) {
+		Hasher hasher = HASH.newHasher();
+		if (csvId instanceof UUID) {
+			UUID uuid = (UUID) csvId;
+			hasher.putByte((byte) 'U').putLong(uuid.getMostSignificantBits()).putLong(uuid.getLeastSignificantBits());
+		} else if (csvId instanceof String) {
+			hasher.putByte((byte) 'S').putUnencodedChars((String) csvId);
+		} else if (csvId instanceof Long || csvId instanceof Integer || csvId instanceof Short || csvId instanceof Byte) {
+			hasher.putByte((byte) 'L').putLong(((Number) csvId).longValue());
+		} else {
+			hasher.putByte((byte) 'O').putUnencodedChars(csvId.getClass().getName()).putByte((byte) 0).putUnencodedChars(csvId.toString());
+		}
+		return ByteBuffer.wrap(hasher.hash().asBytes());
+	}
+
+	/**
+	 * The maps need positive values, so fold the check bits into 62 bits and set the lowest.
+	 */
+	private static long checkValue(long bits) {
+		return (bits >>> 1) | 1L;
+	}
+}
@@ -0,0 +1,83 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.github.jespersm.janusgraph.csvimport.idmap;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Maps the ID column values found in the CSV files to the JanusGraph vertex ids
+ * they were created with. Filled while loading vertices, read while loading edges.
+ *
+ * JanusGraph vertex ids are always positive, which lets implementations store them
+ * as primitive longs and use {@link #MISSING} for "not found".
+ */
+public interface IdMap extends Closeable {
+	long MISSING = -1L;
+
+	/**
+	 * Record the vertex id for a CSV id, unless that CSV id is already mapped.
+	 *
+	 * @param csvId The converted value of the ID column
+	 * @param vertexId The (positive) JanusGraph vertex id
+	 * @return true if the mapping was added, false if the CSV id was already present
+	 */
+	boolean putIfAbsent(Object csvId, long vertexId);
+
+	/**
+	 * @param csvId The converted value of a START_ID or END_ID column
+	 * @return the vertex id, or {@link #MISSING} if no vertex was created for it
+	 */
+	long get(Object csvId);
+
+	/**
+	 * @return the number of mappings, which may be approximate while writers are active
+	 */
+	long size();
+
+	/**
+	 * @return a rough estimate of the memory used, including memory mapped files, for monitoring
+	 */
+	default long estimatedBytes() {
+		return 0;
+	}
+
+	/**
+	 * @return true if vertex ids are computed from the CSV ids, in which case vertices
+	 * must be created with the id returned from {@link #get(Object)}
+	 */
+	default boolean derivesVertexIds() {
+		return false;
+	}
+
+	/**
+	 * Called once all vertices are loaded, before edges are. No more mappings are added after this.
+	 */
+	default void freeze() throws IOException {
+	}
+
+	@Override
+	default void close() throws IOException {
+	}
+
+	/**
+	 * @return the value the maps key a CSV id by. Integral ids are widened to Long, as the
+	 * maps don't tell the integral types apart: an Integer 5 is the same id as a Long 5.
+	 */
+	static Object key(Object csvId) {
+		if (csvId instanceof Integer || csvId instanceof Short || csvId instanceof Byte) {
+			return ((Number) csvId).longValue();
+		}
+		return csvId;
+	}
+}
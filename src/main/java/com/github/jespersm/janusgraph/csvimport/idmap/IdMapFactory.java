@@ -0,0 +1,108 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.github.jespersm.janusgraph.csvimport.idmap;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.LongUnaryOperator;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Picks the {@link IdMap} implementation matching the datatypes of the ID columns.
+ */
+public class IdMapFactory {
+	private static final Logger LOG = LoggerFactory.getLogger(IdMapFactory.class);
+
+	private static final Set<Class<?>> INTEGRAL_TYPES = new HashSet<>(Arrays.asList(Long.class, Integer.class, Short.class, Byte.class));
+
+	private long expectedSize = 0;
+	private File scratchDirectory = null;
+	private long memoryBudget = 0;
+	private boolean fingerprints = false;
+	private long derivedCountBound = 0;
+	private LongUnaryOperator derivedVertexIds = null;
+
+	public IdMapFactory withExpectedSize(long expectedSize) {
+		this.expectedSize = expectedSize;
+		return this;
+	}
+
+	/**
+	 * Spill the map to memory mapped files in the given directory, once it grows beyond the budget.
+	 */
+	public IdMapFactory withScratchDirectory(File scratchDirectory, long memoryBudget) {
+		this.scratchDirectory = scratchDirectory;
+		this.memoryBudget = memoryBudget;
+		return this;
+	}
+
+	/**
+	 * Store string and UUID ids as 128 bit fingerprints rather than the ids themselves.
+	 */
+	public IdMapFactory withFingerprints(boolean fingerprints) {
+		this.fingerprints = fingerprints;
+		return this;
+	}
+
+	/**
+	 * Compute vertex ids from the CSV ids instead of mapping them.
+	 *
+	 * @see DerivedIdMap
+	 */
+	public IdMapFactory withDerivedVertexIds(long countBound, LongUnaryOperator toVertexId) {
+		this.derivedCountBound = countBound;
+		this.derivedVertexIds = toVertexId;
+		return this;
+	}
+
+	/**
+	 * @param idTypes The datatypes of the ID columns of all the vertex files sharing the map
+	 * @return a new, empty map
+	 */
+	public IdMap create(Collection<Class<?>> idTypes) throws IOException {
+		boolean integral = ! idTypes.isEmpty() && INTEGRAL_TYPES.containsAll(idTypes);
+		if (derivedVertexIds != null) {
+			if (! INTEGRAL_TYPES.containsAll(idTypes)) {
+				throw new IllegalArgumentException("Deriving vertex ids requires integral ID types, not " + idTypes);
+			}
+			LOG.info("Deriving vertex ids from ID columns of types {}", idTypes);
+			return new DerivedIdMap(derivedCountBound, derivedVertexIds);
+		}
+		if (integral) {
+			LOG.info("Using {} id map for ID types {}", scratchDirectory != null ? "memory mapped" : "primitive long", idTypes);
+			return createLongKeyMap(1);
+		}
+		if (fingerprints && ! idTypes.isEmpty()) {
+			LOG.info("Using fingerprinted {} id map for ID types {}", scratchDirectory != null ? "memory mapped" : "primitive", idTypes);
+			return new FingerprintIdMap(createLongKeyMap(2), createLongKeyMap(2));
+		}
+		if (scratchDirectory != null) {
+			LOG.warn("Memory mapped id map requires integral ID types or --fingerprint-ids, not {}", idTypes);
+		}
+		LOG.info("Using object id map for ID types {}", idTypes);
+		return new ObjectIdMap(expectedSize);
+	}
+
+	private LongKeyIdMap createLongKeyMap(int shares) throws IOException {
+		if (scratchDirectory != null) {
+			return new MappedIdMap(scratchDirectory, memoryBudget / shares);
+		}
+		return new LongIdMap(expectedSize);
+	}
+}
@@ -0,0 +1,251 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.github.jespersm.janusgraph.csvimport.idmap;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * {@link IdMap} for integral ID columns (long, int, short, byte).
+ *
+ * Keys and values live in primitive arrays using open addressing with linear probing,
+ * so an entry costs 16 bytes plus the slack of the load factor, instead of two boxed
+ * Longs and a hash map node. The table is split into stripes, each guarded by its own
+ * lock, so concurrent vertex writers rarely contend. Readers use optimistic reads and
+ * only fall back to locking if a writer got in the way.
+ *
+ * An empty slot is recognized by a zero value, which is why vertex ids must be positive.
+ */
+public class LongIdMap implements LongKeyIdMap {
+	private static final int STRIPE_BITS = 6;
+	private static final int STRIPES = 1 << STRIPE_BITS;
+	private static final int MIN_CAPACITY = 16;
+	private static final double LOAD_FACTOR = 0.75;
+
+	private final Stripe[] stripes = new Stripe[STRIPES];
+
+	public LongIdMap() {
+		this(0);
+	}
+
+	public LongIdMap(long expectedSize) {
+		int capacity = stripeCapacity(expectedSize);
+		for (int i = 0; i < STRIPES; ++i) {
+			stripes[i] = new Stripe(capacity);
+		}
+	}
+
+	@Override
+	public boolean putIfAbsent(Object csvId, long vertexId) {
+		if (! (csvId instanceof Number)) {
+			throw new IllegalArgumentException("Id " + csvId + " is not an integral number");
+		}
+		return putIfAbsent(((Number) csvId).longValue(), vertexId);
+	}
+
+	@Override
+	public long get(Object csvId) {
+		if (! (csvId instanceof Number)) {
+			return MISSING;
+		}
+		return get(((Number) csvId).longValue());
+	}
+
+	@Override
+	public boolean putIfAbsent(long key, long value) {
+		if (value <= 0) {
+			throw new IllegalArgumentException("Value must be positive, was " + value);
+		}
+		long hash = mix(key);
+		return stripes[(int) (hash >>> (64 - STRIPE_BITS))].putIfAbsent(key, value, (int) hash);
+	}
+
+	@Override
+	public long get(long key) {
+		long hash = mix(key);
+		return stripes[(int) (hash >>> (64 - STRIPE_BITS))].get(key, (int) hash);
+	}
+
+	@Override
+	public long size() {
+		long size = 0;
+		for (Stripe stripe : stripes) {
+			size += stripe.size;
+		}
+		return size;
+	}
+
+	@Override
+	public long estimatedBytes() {
+		long bytes = 0;
+		for (Stripe stripe : stripes) {
+			bytes += (stripe.table.mask + 1L) * 16;
+		}
+		return bytes;
+	}
+
+	/**
+	 * Copy all entries into the given arrays, which must have room for {@link #size()} entries.
+	 * Not safe to call while writers are active.
+	 *
+	 * @return the number of entries copied
+	 */
+	int copyTo(long[] keys, long[] values) {
+		int n = 0;
+		for (Stripe stripe : stripes) {
+			Table table = stripe.table;
+			for (int i = 0; i <= table.mask; ++i) {
+				if (table.values[i] != 0) {
+					keys[n] = table.keys[i];
+					values[n] = table.values[i];
+					++n;
+				}
+			}
+		}
+		return n;
+	}
+
+	/**
+	 * Remove all entries, keeping the allocated tables. Not safe to call while writers are active.
+	 */
+	void clear() {
+		for (Stripe stripe : stripes) {
+			Arrays.fill(stripe.table.values, 0);
+			stripe.size = 0;
+		}
+	}
+
+	/**
+	 * @return the slots of each stripe's table in a map presized for the expected size
+	 */
+	static int stripeCapacity(long expectedSize) {
+		long perStripe = (long) (expectedSize / STRIPES / LOAD_FACTOR) + 1;
+		int capacity = MIN_CAPACITY;
+		while (capacity < perStripe && capacity < (1 << 30)) {
+			capacity <<= 1;
+		}
+		return capacity;
+	}
+
+	/**
+	 * @return the bytes of the tables with the given slots per stripe
+	 */
+	static long tableBytes(int stripeCapacity) {
+		return STRIPES * (long) stripeCapacity * 16;
+	}
+
+	/**
+	 * @return the entries the tables with the given slots per stripe hold before growing,
+	 * if the entries are spread evenly over the stripes
+	 */
+	static long entriesBeforeGrowing(int stripeCapacity) {
+		return (long) (STRIPES * (long) stripeCapacity * LOAD_FACTOR);
+	}
+
+	/**
+	 * Finalization step of MurmurHash3, spreads sequential ids over the whole table.
+	 */
+	static long mix(long key) {
+		key ^= key >>> 33;
+		key *= 0xff51afd7ed558ccdL;
+		key ^= key >>> 33;
+		key *= 0xc4ceb9fe1a85ec53L;
+		key ^= key >>> 33;
+		return key;
+	}
+
+	private static final class Table {
+		final long[] keys;
+		final long[] values;
+		final int mask;
+
+		Table(int capacity) {
+			this.keys = new long[capacity];
+			this.values = new long[capacity];
+			this.mask = capacity - 1;
+		}
+
+		long find(long key, int hash) {
+			for (int i = hash & mask, probes = 0; probes <= mask; i = (i + 1) & mask, ++probes) {
+				long value = values[i];
+				if (value == 0) return MISSING;
+				if (keys[i] == key) return value;
+			}
+			return MISSING;
+		}
+
+		boolean insert(long key, long value, int hash) {
+			int i = hash & mask;
+			while (values[i] != 0) {
+				if (keys[i] == key) return false;
+				i = (i + 1) & mask;
+			}
+			keys[i] = key;
+			values[i] = value;
+			return true;
+		}
+	}
+
+	private static final class Stripe {
+		final StampedLock lock = new StampedLock();
+		Table table;
+		volatile int size;
+		int threshold;
+
+		Stripe(int capacity) {
+			this.table = new Table(capacity);
+			this.threshold = (int) (capacity * LOAD_FACTOR);
+		}
+
+		long get(long key, int hash) {
+			long stamp = lock.tryOptimisticRead();
+			long value = table.find(key, hash);
+			if (! lock.validate(stamp)) {
+				stamp = lock.readLock();
+				try {
+					value = table.find(key, hash);
+				} finally {
+					lock.unlockRead(stamp);
+				}
+			}
+			return value;
+		}
+
+		boolean putIfAbsent(long key, long value, int hash) {
+			long stamp = lock.writeLock();
+			try {
+				if (! table.insert(key, value, hash)) {
+					return false;
+				}
+				if (++size > threshold) {
+					grow();
+				}
+				return true;
+			} finally {
+				lock.unlockWrite(stamp);
+			}
+		}
+
+		private void grow() {
+			Table old = table;
+			Table bigger = new Table((old.mask + 1) << 1);
+			for (int i = 0; i <= old.mask; ++i) {
+				if (old.values[i] != 0) {
+					bigger.insert(old.keys[i], old.values[i], (int) mix(old.keys[i]));
+				}
+			}
+			table = bigger;
+			threshold = (int) ((bigger.mask + 1) * LOAD_FACTOR);
+		}
+	}
+}
@@ -0,0 +1,79 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package com.github.jespersm.janusgraph.csvimport.idmap;
+
+/**
+ * Sorting of parallel key/value arrays of primitive longs, without boxing.
+ */
+final class LongPairs {
+	private static final int INSERTION_SORT_THRESHOLD = 32;
+
+	private LongPairs() {
+	}
+
+	/**
+	 * Sort keys[from..to) ascending, moving values along with their keys.
+	 */
+	static void sort(long[] keys, long[] values, int from, int to) {
+		while (to - from > INSERTION_SORT_THRESHOLD) {
+			int mid = (from + to) >>> 1;
+			medianToFront(keys, values, from, mid, to - 1);
+			long pivot = keys[from];
+			int i = from, j = to;
+			while (true) {
+				while (keys[++i] < pivot && i < to - 1);
+				while (keys[--j] > pivot);
+				if (i >= j) break;
+				swap(keys, values, i, j);
+			}
+			swap(keys, values, from, j);
+			// Recurse into the smaller half, loop on the larger one
+			if (j - from < to - j - 1) {
+				sort(keys, values, from, j);
+				from = j + 1;
+			} else {
+				sort(keys, values, j + 1, to);
+				to = j;
+			}
+		}
+		for (int i = from + 1; i < to; ++i) {
+			long key = keys[i];
+			long value = values[i];
+			int j = i - 1;
+			while (j >= from && keys[j] > key) {
+				keys[j + 1] = keys[j];
+				values[j + 1] = values[j];
+				--j;
+			}
+			keys[j + 1] = key;
+			values[j + 1] = value;
+		}
+	}
+
+	private static void medianToFront(long[] keys, long[] values, int a, int b, int c) {
+		if (keys[b] < keys[a]) swap(keys, values, a, b);
+		if (keys[c] < keys[a]) swap(keys, values, a, c);
+		if (keys[c] < keys[b]) swap(keys, values, b, c);
+		swap(keys, values, a, b);
+	}
+
+	private static void swap(long[] keys, long[] values, int i, int j) {
+		long k = keys[i];
+		keys[i] = keys[j];
+		keys[j] = k;
+		long v = values[i];
+		values[i] = values[j];
+		values[j] = v;
+	}
+}
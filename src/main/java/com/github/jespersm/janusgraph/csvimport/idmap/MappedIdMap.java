@@ -0,0 +1,254 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.github.jespersm.janusgraph.csvimport.idmap;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link IdMap} for integral keys which spills to memory mapped files once the in-memory
+ * buffer reaches its budget, so the number of vertices is bounded by disk rather than heap.
+ *
+ * New mappings go to an in-memory {@link LongIdMap}. When it is full, its content is sorted
+ * and written to a {@link MappedSegment} in the scratch directory. Lookups check the buffer
+ * and then every segment. On {@link #freeze()} the segments are merged into one, so edge
+ * loading does a single indexed binary search per id, served from the page cache.
+ */
+public class MappedIdMap implements LongKeyIdMap {
+	private static final Logger LOG = LoggerFactory.getLogger(MappedIdMap.class);
+	/** Spill at this share of what the buffer holds before growing, as the stripes fill unevenly */
+	private static final double SPILL_FILL = 0.9;
+
+	private final File scratchDirectory;
+	private final int bufferCapacity;
+	private final AtomicInteger segmentCounter = new AtomicInteger();
+	private final ReentrantReadWriteLock flushLock = new ReentrantReadWriteLock();
+	private final List<MappedSegment> segments = new CopyOnWriteArrayList<>();
+	private LongIdMap buffer;
+	private volatile boolean frozen = false;
+
+	public MappedIdMap(File scratchDirectory, long memoryBudget) throws IOException {
+		if (! scratchDirectory.isDirectory() && ! scratchDirectory.mkdirs()) {
+			throw new IOException("Cannot create scratch directory " + scratchDirectory);
+		}
+		this.scratchDirectory = scratchDirectory;
+		this.bufferCapacity = bufferCapacity(memoryBudget);
+		this.buffer = new LongIdMap(bufferCapacity);
+		LOG.info("Id map spills to {} every {} entries", scratchDirectory, bufferCapacity);
+	}
+
+	/**
+	 * The buffer's tables have a power of two slots per stripe, so find the largest tables
+	 * which, with the arrays a spill copies their entries into, fit the budget. The buffer is
+	 * spilled before it fills them, so they don't grow past it.
+	 */
+	private static int bufferCapacity(long memoryBudget) {
+		int stripeCapacity = LongIdMap.stripeCapacity(0);
+		while (stripeCapacity < (1 << 30) && bufferBytes(stripeCapacity << 1) <= memoryBudget) {
+			stripeCapacity <<= 1;
+		}
+		return (int) Math.min((long) (LongIdMap.entriesBeforeGrowing(stripeCapacity) * SPILL_FILL), Integer.MAX_VALUE / 2);
+	}
+
+	private static long bufferBytes(int stripeCapacity) {
+		return LongIdMap.tableBytes(stripeCapacity) + LongIdMap.entriesBeforeGrowing(stripeCapacity) * 16;
+	}
+
+	@Override
+	public boolean putIfAbsent(Object csvId, long vertexId) {
+		if (! (csvId instanceof Number)) {
+			throw new IllegalArgumentException("Id " + csvId + " is not an integral number");
+		}
+		return putIfAbsent(((Number) csvId).longValue(), vertexId);
+	}
+
+	@Override
+	public boolean putIfAbsent(long key, long vertexId) {
+		if (frozen) {
+			throw new IllegalStateException("Id map is frozen");
+		}
+		boolean added;
+		boolean full;
+		flushLock.readLock().lock();
+		try {
+			if (findInSegments(key) != MISSING) {
+				return false;
+			}
+			added = buffer.putIfAbsent(key, vertexId);
+			full = buffer.size() >= bufferCapacity;
+		} finally {
+			flushLock.readLock().unlock();
+		}
+		if (full) {
+			flush(bufferCapacity);
+		}
+		return added;
+	}
+
+	@Override
+	public long get(Object csvId) {
+		if (! (csvId instanceof Number)) {
+			return MISSING;
+		}
+		return get(((Number) csvId).longValue());
+	}
+
+	@Override
+	public long get(long key) {
+		if (frozen) {
+			return findInSegments(key);
+		}
+		flushLock.readLock().lock();
+		try {
+			long value = buffer.get(key);
+			return value != MISSING ? value : findInSegments(key);
+		} finally {
+			flushLock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public long estimatedBytes() {
+		LongIdMap current = buffer;
+		long bytes = current != null ? current.estimatedBytes() : 0;
+		for (MappedSegment segment : segments) {
+			bytes += segment.size() * 16;
+		}
+		return bytes;
+	}
+
+	private long findInSegments(long key) {
+		for (MappedSegment segment : segments) {
+			long value = segment.get(key);
+			if (value != MISSING) return value;
+		}
+		return MISSING;
+	}
+
+	@Override
+	public long size() {
+		long size = frozen ? 0 : buffer.size();
+		for (MappedSegment segment : segments) {
+			size += segment.size();
+		}
+		return size;
+	}
+
+	private void flush(int threshold) {
+		flushLock.writeLock().lock();
+		try {
+			if (buffer.size() < threshold || buffer.size() == 0) {
+				return;
+			}
+			long[] keys = new long[(int) buffer.size()];
+			long[] values = new long[keys.length];
+			int n = buffer.copyTo(keys, values);
+			LongPairs.sort(keys, values, 0, n);
+			try (MappedSegment.Writer writer = new MappedSegment.Writer(newSegmentFile())) {
+				for (int i = 0; i < n; ++i) {
+					writer.append(keys[i], values[i]);
+				}
+				segments.add(writer.finish());
+			}
+			buffer.clear();
+			LOG.debug("Spilled {} ids, now {} segments", n, segments.size());
+		} catch (IOException e) {
+			throw new UncheckedIOException("Error spilling id map to " + scratchDirectory, e);
+		} finally {
+			flushLock.writeLock().unlock();
+		}
+	}
+
+	private File newSegmentFile() {
+		return new File(scratchDirectory, "idmap-" + Long.toHexString(System.nanoTime()) + "-" + segmentCounter.incrementAndGet() + ".seg");
+	}
+
+	/**
+	 * Spill what's left in memory, release the buffer and merge all segments into one.
+	 */
+	@Override
+	public void freeze() throws IOException {
+		flush(1);
+		flushLock.writeLock().lock();
+		try {
+			frozen = true;
+			buffer = null;
+			if (segments.size() > 1) {
+				LOG.info("Merging {} id map segments", segments.size());
+				MappedSegment merged = merge(new ArrayList<>(segments));
+				segments.forEach(MappedSegment::close);
+				segments.clear();
+				segments.add(merged);
+			}
+			LOG.info("Id map frozen with {} ids", size());
+		} finally {
+			flushLock.writeLock().unlock();
+		}
+	}
+
+	private MappedSegment merge(List<MappedSegment> inputs) throws IOException {
+		PriorityQueue<Cursor> heads = new PriorityQueue<>();
+		for (MappedSegment segment : inputs) {
+			if (segment.size() > 0) heads.add(new Cursor(segment));
+		}
+		try (MappedSegment.Writer writer = new MappedSegment.Writer(newSegmentFile())) {
+			while (! heads.isEmpty()) {
+				Cursor head = heads.poll();
+				writer.append(head.key, head.segment.valueAt(head.position));
+				if (head.advance()) {
+					heads.add(head);
+				}
+			}
+			return writer.finish();
+		}
+	}
+
+	@Override
+	public void close() {
+		segments.forEach(MappedSegment::close);
+		segments.clear();
+		buffer = null;
+	}
+
+	private static final class Cursor implements Comparable<Cursor> {
+		final MappedSegment segment;
+		long position = 0;
+		long key;
+
+		Cursor(MappedSegment segment) {
+			this.segment = segment;
+			this.key = segment.keyAt(0);
+		}
+
+		boolean advance() {
+			if (++position >= segment.size()) return false;
+			key = segment.keyAt(position);
+			return true;
+		}
+
+		@Override
+		public int compareTo(Cursor o) {
+			return Long.compare(key, o.key);
+		}
+	}
+}
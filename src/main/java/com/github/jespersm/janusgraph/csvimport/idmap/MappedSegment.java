@@ -0,0 +1,154 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.github.jespersm.janusgraph.csvimport.idmap;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * An immutable file of (key, value) long pairs sorted by key, memory mapped for lookups.
+ *
+ * Every {@link #INDEX_STRIDE}th key is kept on the heap, so a lookup is a binary search
+ * in that sparse index followed by a binary search in a single block of the file, which
+ * keeps the pages touched per lookup low.
+ */
+class MappedSegment implements Closeable {
+	private static final int ENTRY_BYTES = 16;
+	private static final int WINDOW_BITS = 26;
+	private static final long WINDOW_ENTRIES = 1L << WINDOW_BITS;
+	private static final int INDEX_STRIDE = 512;
+
+	private final File file;
+	private final long entries;
+	private final MappedByteBuffer[] windows;
+	private final long[] sparseIndex;
+
+	private MappedSegment(File file, long entries, long[] sparseIndex) throws IOException {
+		this.file = file;
+		this.entries = entries;
+		this.sparseIndex = sparseIndex;
+		this.windows = new MappedByteBuffer[(int) ((entries + WINDOW_ENTRIES - 1) >>> WINDOW_BITS)];
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			for (int w = 0; w < windows.length; ++w) {
+				long first = (long) w << WINDOW_BITS;
+				long count = Math.min(WINDOW_ENTRIES, entries - first);
+				windows[w] = channel.map(MapMode.READ_ONLY, first * ENTRY_BYTES, count * ENTRY_BYTES);
+			}
+		}
+	}
+
+	long size() {
+		return entries;
+	}
+
+	long keyAt(long i) {
+		return windows[(int) (i >>> WINDOW_BITS)].getLong((int) ((i & (WINDOW_ENTRIES - 1)) * ENTRY_BYTES));
+	}
+
+	long valueAt(long i) {
+		return windows[(int) (i >>> WINDOW_BITS)].getLong((int) ((i & (WINDOW_ENTRIES - 1)) * ENTRY_BYTES + 8));
+	}
+
+	long get(long key) {
+		if (entries == 0) return IdMap.MISSING;
+		int block = Arrays.binarySearch(sparseIndex, key);
+		if (block >= 0) {
+			return valueAt((long) block * INDEX_STRIDE);
+		}
+		block = -block - 2;
+		if (block < 0) return IdMap.MISSING;
+		long low = (long) block * INDEX_STRIDE + 1;
+		long high = Math.min(low + INDEX_STRIDE - 2, entries - 1);
+		while (low <= high) {
+			long mid = (low + high) >>> 1;
+			long midKey = keyAt(mid);
+			if (midKey < key) {
+				low = mid + 1;
+			} else if (midKey > key) {
+				high = mid - 1;
+			} else {
+				return valueAt(mid);
+			}
+		}
+		return IdMap.MISSING;
+	}
+
+	@Override
+	public void close() {
+		Arrays.fill(windows, null);
+		file.delete();
+	}
+
+	/**
+	 * Writes pairs, which must be appended in strictly ascending key order.
+	 */
+	static class Writer implements Closeable {
+		private final File file;
+		private final FileChannel channel;
+		private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20);
+		private long[] sparseIndex = new long[16];
+		private long entries = 0;
+
+		Writer(File file) throws IOException {
+			this.file = file;
+			this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+			file.deleteOnExit();
+		}
+
+		void append(long key, long value) throws IOException {
+			if (entries % INDEX_STRIDE == 0) {
+				int slot = (int) (entries / INDEX_STRIDE);
+				if (slot == sparseIndex.length) {
+					sparseIndex = Arrays.copyOf(sparseIndex, slot * 2);
+				}
+				sparseIndex[slot] = key;
+			}
+			if (buffer.remaining() < ENTRY_BYTES) {
+				drain();
+			}
+			buffer.putLong(key).putLong(value);
+			++entries;
+		}
+
+		private void drain() throws IOException {
+			buffer.flip();
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			buffer.clear();
+		}
+
+		MappedSegment finish() throws IOException {
+			drain();
+			channel.close();
+			int indexSize = (int) ((entries + INDEX_STRIDE - 1) / INDEX_STRIDE);
+			return new MappedSegment(file, entries, Arrays.copyOf(sparseIndex, indexSize));
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (channel.isOpen()) {
+				channel.close();
+				Files.deleteIfExists(file.toPath());
+			}
+		}
+	}
+}
@@ -0,0 +1,53 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.github.jespersm.janusgraph.csvimport.idmap;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * General purpose {@link IdMap} for ID types which can't be reduced to a long,
+ * such as strings and UUIDs.
+ */
+public class ObjectIdMap implements IdMap {
+	private static final int BYTES_PER_MAPPING = 96;
+
+	private final ConcurrentHashMap<Object, Long> map;
+
+	public ObjectIdMap(long expectedSize) {
+		this.map = new ConcurrentHashMap<>((int) Math.min(expectedSize, 1 << 30));
+	}
+
+	@Override
+	public boolean putIfAbsent(Object csvId, long vertexId) {
+		return map.putIfAbsent(IdMap.key(csvId), vertexId) == null;
+	}
+
+	@Override
+	public long get(Object csvId) {
+		Long vertexId = map.get(IdMap.key(csvId));
+		return vertexId == null ? MISSING : vertexId;
+	}
+
+	@Override
+	public long size() {
+		return map.mappingCount();
+	}
+
+	/**
+	 * Counts a hash map node, a boxed vertex id and a small key object per mapping.
+	 */
+	@Override
+	public long estimatedBytes() {
+		return map.mappingCount() * BYTES_PER_MAPPING;
+	}
+}
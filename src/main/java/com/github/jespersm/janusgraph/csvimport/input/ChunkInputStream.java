@@ -0,0 +1,56 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package com.github.jespersm.janusgraph.csvimport.input;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads the bytes of an uncompressed {@link FileChunk} straight into the caller's buffer, using
+ * positional reads so any number of chunks of the same file can be read concurrently.
+ */
+class ChunkInputStream extends InputStream {
+	private final FileChannel channel;
+	private final long end;
+	private long position;
+
+	ChunkInputStream(FileChunk chunk) throws IOException {
+		this.channel = FileChannel.open(chunk.getFile().toPath(), StandardOpenOption.READ);
+		this.position = chunk.getStart();
+		this.end = chunk.getEnd();
+	}
+
+	@Override
+	public int read() throws IOException {
+		byte[] b = new byte[1];
+		return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (position >= end) return -1;
+		int n = channel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, end - position)), position);
+		if (n <= 0) return -1;
+		position += n;
+		return n;
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+}
@@ -0,0 +1,83 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package com.github.jespersm.janusgraph.csvimport.input;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+import com.github.luben.zstd.ZstdInputStream;
+
+/**
+ * The compression formats of input files, detected from their magic bytes, or failing that
+ * their extension. Both formats may consist of several concatenated members (gzip) or frames
+ * (zstd), which are decompressed as one stream.
+ */
+public enum Compression {
+	NONE(null, new byte[0]),
+	GZIP(".gz", new byte[] { 0x1f, (byte) 0x8b }),
+	ZSTD(".zst", new byte[] { 0x28, (byte) 0xb5, 0x2f, (byte) 0xfd });
+
+	private static final int BUFFER_SIZE = 1 << 20;
+
+	private final String extension;
+	private final byte[] magic;
+
+	Compression(String extension, byte[] magic) {
+		this.extension = extension;
+		this.magic = magic;
+	}
+
+	public static Compression detect(File file) throws IOException {
+		byte[] head = new byte[4];
+		int n = 0;
+		try (InputStream in = new FileInputStream(file)) {
+			for (int r; n < head.length && (r = in.read(head, n, head.length - n)) > 0; n += r);
+		}
+		for (Compression compression : values()) {
+			if (compression != NONE && startsWith(head, n, compression.magic)) return compression;
+		}
+		for (Compression compression : values()) {
+			if (compression != NONE && file.getName().endsWith(compression.extension)) return compression;
+		}
+		return NONE;
+	}
+
+	private static boolean startsWith(byte[] head, int length, byte[] magic) {
+		if (length < magic.length) return false;
+		for (int i = 0; i < magic.length; ++i) {
+			if (head[i] != magic[i]) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @param raw The bytes of the file
+	 * @param name Name of the file, for the read-ahead thread
+	 * @return the decompressed bytes, decompressed on a read-ahead thread if compressed
+	 */
+	InputStream decompress(InputStream raw, String name) throws IOException {
+		switch (this) {
+		case GZIP:
+			return new ReadAheadInputStream(new GZIPInputStream(raw, BUFFER_SIZE), BUFFER_SIZE, name);
+		case ZSTD:
+			return new ReadAheadInputStream(new ZstdInputStream(raw), BUFFER_SIZE, name);
+		case NONE:
+		default:
+			return raw;
+		}
+	}
+}
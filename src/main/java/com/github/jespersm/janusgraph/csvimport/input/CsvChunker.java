@@ -0,0 +1,188 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package com.github.jespersm.janusgraph.csvimport.input;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits CSV files into {@link FileChunk}s which start and end on record boundaries.
+ *
+ * Without multiline fields, every line break ends a record, so a boundary is found by
+ * seeking to the desired offset and reading up to the next line break. If fields may
+ * contain line breaks, that isn't safe, and the file is scanned from the start to keep
+ * track of whether a line break is inside quotes.
+ */
+public class CsvChunker {
+	private static final int BUFFER_SIZE = 1 << 20;
+
+	private CsvChunker() {
+	}
+
+	/**
+	 * @param quoted Whether the header may contain quoted line breaks
+	 * @return the offset of the first record after the header line
+	 */
+	public static long headerEnd(File file, boolean quoted) throws IOException {
+		try (Scanner scanner = new Scanner(file)) {
+			return scanner.toRecordStart(quoted);
+		}
+	}
+
+	/**
+	 * @param file The file to split
+	 * @param start Offset of the first record to include
+	 * @param chunkSize Approximate size of each chunk in bytes, or 0 for a single chunk
+	 * @param multilineFields Whether quoted fields may contain line breaks
+	 * @return the chunks covering the file from start to end
+	 */
+	public static List<FileChunk> split(File file, long start, long chunkSize, boolean multilineFields) throws IOException {
+		List<FileChunk> chunks = new ArrayList<>();
+		try (Scanner scanner = new Scanner(file)) {
+			long size = scanner.size();
+			long chunkStart = start;
+			scanner.skipTo(start, false);
+			while (chunkStart < size) {
+				long target = chunkStart + chunkSize;
+				if (chunkSize <= 0 || target >= size) {
+					chunks.add(new FileChunk(file, chunkStart, size));
+					break;
+				}
+				scanner.skipTo(target, multilineFields);
+				long boundary = scanner.toRecordStart(multilineFields);
+				chunks.add(new FileChunk(file, chunkStart, boundary));
+				chunkStart = boundary;
+			}
+		}
+		return chunks;
+	}
+
+	/**
+	 * Count the lines of a file up to some offsets, such as the starts of its chunks. Each LF,
+	 * CRLF or CR is a line break, whether inside a quoted field or not.
+	 *
+	 * @param offsets Ascending offsets into the file
+	 * @return the number of the line at each offset, starting from 1
+	 */
+	public static long[] lineNumbers(File file, long[] offsets) throws IOException {
+		long[] lines = new long[offsets.length];
+		try (Scanner scanner = new Scanner(file)) {
+			long line = 1;
+			int previous = -1;
+			for (int i = 0; i < offsets.length; ++i) {
+				for (int b; scanner.position() < offsets[i] && (b = scanner.next()) >= 0; previous = b) {
+					if (b == '\r' || (b == '\n' && previous != '\r')) {
+						++line;
+					}
+				}
+				lines[i] = line;
+			}
+		}
+		return lines;
+	}
+
+	private static final class Scanner implements Closeable {
+		private final FileChannel channel;
+		private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+		private final long size;
+		private long bufferStart = 0;
+		private boolean inQuotes = false;
+
+		Scanner(File file) throws IOException {
+			this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+			this.size = channel.size();
+			buffer.limit(0);
+		}
+
+		long size() {
+			return size;
+		}
+
+		private long position() {
+			return bufferStart + buffer.position();
+		}
+
+		private int next() throws IOException {
+			if (! buffer.hasRemaining()) {
+				long position = position();
+				buffer.clear();
+				bufferStart = position;
+				int n = channel.read(buffer, position);
+				buffer.flip();
+				if (n <= 0) return -1;
+			}
+			return buffer.get() & 0xff;
+		}
+
+		private void reposition(long target) {
+			if (target >= bufferStart && target <= bufferStart + buffer.limit()) {
+				buffer.position((int) (target - bufferStart));
+			} else {
+				bufferStart = target;
+				buffer.limit(0);
+			}
+		}
+
+		/**
+		 * Move to the target offset, optionally tracking the quoting state of the bytes passed.
+		 */
+		void skipTo(long target, boolean trackQuotes) throws IOException {
+			if (! trackQuotes) {
+				reposition(target);
+				inQuotes = false;
+				return;
+			}
+			while (position() < target) {
+				int b = next();
+				if (b < 0) return;
+				if (b == '"') inQuotes = ! inQuotes;
+			}
+		}
+
+		/**
+		 * Move past the next record separator (LF, CRLF or CR), returning the offset after it.
+		 */
+		long toRecordStart(boolean trackQuotes) throws IOException {
+			int b;
+			while ((b = next()) >= 0) {
+				if (trackQuotes && b == '"') {
+					inQuotes = ! inQuotes;
+				} else if (! inQuotes) {
+					if (b == '\n') {
+						return position();
+					}
+					if (b == '\r') {
+						long afterCR = position();
+						if (next() != '\n') {
+							reposition(afterCR);
+						}
+						return position();
+					}
+				}
+			}
+			return size;
+		}
+
+		@Override
+		public void close() throws IOException {
+			channel.close();
+		}
+	}
+}
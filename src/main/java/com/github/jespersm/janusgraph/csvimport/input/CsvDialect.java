@@ -0,0 +1,57 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package com.github.jespersm.janusgraph.csvimport.input;
+
+/**
+ * How the fields of a file are separated and quoted. Records are separated by LF, CRLF or CR.
+ *
+ * Quoted dialects follow RFC 4180: a field starting with a double quote ends at the next lone
+ * double quote, and may contain delimiters, line breaks and doubled quotes. Unquoted dialects
+ * treat quotes as ordinary characters, which lets the tokenizer skip quote handling entirely.
+ */
+public final class CsvDialect {
+	public static final CsvDialect CSV = new CsvDialect((byte) ',', true);
+	public static final CsvDialect TSV = new CsvDialect((byte) '\t', false);
+
+	private final byte delimiter;
+	private final boolean quoted;
+
+	private CsvDialect(byte delimiter, boolean quoted) {
+		this.delimiter = delimiter;
+		this.quoted = quoted;
+	}
+
+	/**
+	 * @return this dialect, separating fields with another (ASCII) character
+	 */
+	public CsvDialect withDelimiter(char delimiter) {
+		if (delimiter == 0 || delimiter >= 0x80 || delimiter == '"' || delimiter == '\n' || delimiter == '\r') {
+			throw new IllegalArgumentException("Unsupported delimiter '" + delimiter + "', must be an ASCII character other than quote and line breaks");
+		}
+		return new CsvDialect((byte) delimiter, quoted);
+	}
+
+	public byte getDelimiter() {
+		return delimiter;
+	}
+
+	public boolean isQuoted() {
+		return quoted;
+	}
+
+	@Override
+	public String toString() {
+		return (quoted ? "quoted" : "unquoted") + " fields separated by '" + (delimiter == '\t' ? "\\t" : String.valueOf((char) delimiter)) + "'";
+	}
+}
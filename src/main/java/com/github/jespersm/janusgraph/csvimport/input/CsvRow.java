@@ -0,0 +1,188 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package com.github.jespersm.janusgraph.csvimport.input;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * The current record of a {@link CsvTokenizer}, which is refilled for every record rather than
+ * allocated anew. The fields are kept as undecoded UTF-8 bytes, and {@link #get(int)} returns a
+ * view which decodes them only if they aren't plain ASCII. Neither the row nor its fields may be
+ * kept after the tokenizer moves on; convert them, or call toString().
+ */
+public final class CsvRow {
+	private byte[] data = new byte[1024];
+	private int length = 0;
+	private int[] ends = new int[16];
+	private boolean[] ascii = new boolean[16];
+	private Field[] views = new Field[16];
+	private int size = 0;
+	private long recordNumber = 0;
+	private long lineNumber = 0;
+	private int generation = 0;
+	private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+			.onMalformedInput(CodingErrorAction.REPLACE)
+			.onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+	/**
+	 * @return the number of the record in its chunk, starting from 1
+	 */
+	public long getRecordNumber() {
+		return recordNumber;
+	}
+
+	/**
+	 * @return the line of its chunk the record starts on, starting from 1, which is the line of
+	 * the file once offset by {@link CsvChunker#lineNumbers(java.io.File, long[])}
+	 */
+	public long getLineNumber() {
+		return lineNumber;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return the field, which is empty (not null) if there's nothing between the delimiters
+	 */
+	public CharSequence get(int index) {
+		if (index < 0 || index >= size) {
+			throw new ArrayIndexOutOfBoundsException("Field " + index + " requested, but record " + recordNumber + " only has " + size + " fields");
+		}
+		Field view = views[index];
+		if (view == null) {
+			view = views[index] = new Field(index);
+		}
+		return view;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder s = new StringBuilder("CsvRow [recordNumber=").append(recordNumber).append(", values=[");
+		for (int i = 0; i < size; ++i) {
+			if (i > 0) s.append(", ");
+			s.append(get(i));
+		}
+		return s.append("]]").toString();
+	}
+
+	void start() {
+		length = 0;
+		size = 0;
+		++generation;
+	}
+
+	void append(byte b) {
+		if (length == data.length) {
+			data = Arrays.copyOf(data, length * 2);
+		}
+		data[length++] = b;
+	}
+
+	void append(byte[] bytes, int offset, int count) {
+		if (length + count > data.length) {
+			data = Arrays.copyOf(data, Math.max(length + count, length * 2));
+		}
+		System.arraycopy(bytes, offset, data, length, count);
+		length += count;
+	}
+
+	void endField(boolean isAscii) {
+		if (size == ends.length) {
+			ends = Arrays.copyOf(ends, size * 2);
+			ascii = Arrays.copyOf(ascii, size * 2);
+			views = Arrays.copyOf(views, size * 2);
+		}
+		ends[size] = length;
+		ascii[size] = isAscii;
+		++size;
+	}
+
+	void finish(long recordNumber, long lineNumber) {
+		this.recordNumber = recordNumber;
+		this.lineNumber = lineNumber;
+	}
+
+	private int startOf(int index) {
+		return index == 0 ? 0 : ends[index - 1];
+	}
+
+	/**
+	 * A reusable view of the field at one index of the current record.
+	 */
+	private final class Field implements CharSequence {
+		private final int index;
+		private char[] decoded = new char[0];
+		private int decodedLength;
+		private int decodedGeneration = -1;
+
+		Field(int index) {
+			this.index = index;
+		}
+
+		private void decode() {
+			if (decodedGeneration == generation) return;
+			int start = startOf(index);
+			int count = ends[index] - start;
+			if (decoded.length < count) {
+				decoded = new char[Math.max(count, decoded.length * 2)];
+			}
+			CharBuffer out = CharBuffer.wrap(decoded);
+			decoder.reset();
+			decoder.decode(ByteBuffer.wrap(data, start, count), out, true);
+			decoder.flush(out);
+			decodedLength = out.position();
+			decodedGeneration = generation;
+		}
+
+		@Override
+		public int length() {
+			if (ascii[index]) {
+				return ends[index] - startOf(index);
+			}
+			decode();
+			return decodedLength;
+		}
+
+		@Override
+		public char charAt(int i) {
+			if (ascii[index]) {
+				return (char) data[startOf(index) + i];
+			}
+			decode();
+			return decoded[i];
+		}
+
+		@Override
+		public CharSequence subSequence(int start, int end) {
+			return toString().substring(start, end);
+		}
+
+		@Override
+		public String toString() {
+			int start = startOf(index);
+			if (ascii[index]) {
+				return new String(data, start, ends[index] - start, StandardCharsets.ISO_8859_1);
+			}
+			decode();
+			return new String(decoded, 0, decodedLength);
+		}
+	}
+}
@@ -0,0 +1,194 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package com.github.jespersm.janusgraph.csvimport.input;
+
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import com.google.common.io.CountingInputStream;
+
+/**
+ * Splits the bytes of a {@link FileChunk} into records and fields. Uncompressed chunks are read
+ * with positional reads, so chunks of the same file can be tokenized concurrently, while
+ * compressed files are decompressed on a read-ahead thread.
+ *
+ * Delimiters, quotes and line breaks are all ASCII, so records are found in the raw UTF-8
+ * bytes without decoding them. Runs of ordinary bytes are copied in bulk, which is all an
+ * unquoted dialect ever needs. Blank lines are skipped and not counted as records, but the
+ * lines are counted, including those inside quoted fields, so each record knows its line.
+ */
+public class CsvTokenizer implements Closeable {
+	private static final int BUFFER_SIZE = 1 << 16;
+	private static final int EOF = -1;
+
+	private final FileChunk chunk;
+	private final CountingInputStream raw;
+	private final InputStream source;
+	private final byte[] bytes = new byte[BUFFER_SIZE];
+	private final byte delimiter;
+	private final boolean quoted;
+	private final CsvRow row = new CsvRow();
+	private int position = 0;
+	private int limit = 0;
+	private long recordNumber = 0;
+	private long lineNumber = 1;
+
+	public CsvTokenizer(FileChunk chunk, CsvDialect dialect) throws IOException {
+		this.chunk = chunk;
+		Compression compression = chunk.getCompression();
+		this.raw = new CountingInputStream(compression == Compression.NONE ? new ChunkInputStream(chunk) : new FileInputStream(chunk.getFile()));
+		this.source = compression.decompress(raw, chunk.toString());
+		this.delimiter = dialect.getDelimiter();
+		this.quoted = dialect.isQuoted();
+		if (chunk.startsWithHeader()) {
+			try {
+				next();
+			} catch (IOException e) {
+				source.close();
+				throw e;
+			}
+			recordNumber = 0;
+		}
+	}
+
+	/**
+	 * @return the next record, in the same (reused) row object as before, or null at the end of the chunk
+	 */
+	public CsvRow next() throws IOException {
+		int b;
+		do {
+			b = read();
+			if (b == '\r') {
+				skipLineFeed();
+			}
+			if (b == '\n' || b == '\r') {
+				++lineNumber;
+			}
+		} while (b == '\n' || b == '\r');
+		if (b == EOF) {
+			return null;
+		}
+		--position;
+		row.start();
+		long startLine = lineNumber;
+		do {
+			b = quoted && peek() == '"' ? quotedField() : unquotedField();
+			if (b == '\r') {
+				skipLineFeed();
+			}
+		} while (b == delimiter);
+		if (b == '\n' || b == '\r') {
+			++lineNumber;
+		}
+		row.finish(++recordNumber, startLine);
+		return row;
+	}
+
+	/**
+	 * @return the number of bytes read from the file so far, before decompression
+	 */
+	public long getBytesRead() {
+		return raw.getCount();
+	}
+
+	/**
+	 * Copy bytes up to the next delimiter or line break into the row.
+	 *
+	 * @return the byte which ended the field, or {@link #EOF}
+	 */
+	private int unquotedField() throws IOException {
+		byte seen = 0;
+		while (true) {
+			int start = position;
+			while (position < limit) {
+				byte c = bytes[position];
+				if (c == delimiter || c == '\n' || c == '\r') {
+					row.append(bytes, start, position - start);
+					row.endField(seen >= 0);
+					return bytes[position++];
+				}
+				seen |= c;
+				++position;
+			}
+			row.append(bytes, start, position - start);
+			if (! fill()) {
+				row.endField(seen >= 0);
+				return EOF;
+			}
+		}
+	}
+
+	/**
+	 * Copy the content of a quoted field into the row, turning doubled quotes into one.
+	 *
+	 * @return the byte after the closing quote, which must be a delimiter, line break or {@link #EOF}
+	 */
+	private int quotedField() throws IOException {
+		long startRecord = recordNumber + 1;
+		read();
+		byte seen = 0;
+		while (true) {
+			int b = read();
+			if (b == EOF) {
+				throw new IOException("EOF reached before the quoted field of record " + startRecord + " finished, in " + chunk);
+			}
+			if (b == '"') {
+				b = read();
+				if (b != '"') {
+					if (b != delimiter && b != '\n' && b != '\r' && b != EOF) {
+						throw new IOException("Invalid char '" + (char) b + "' between the closing quote and the delimiter in record " + startRecord + " of " + chunk);
+					}
+					row.endField(seen >= 0);
+					return b;
+				}
+			}
+			if (b == '\n' || (b == '\r' && peek() != '\n')) {
+				++lineNumber;
+			}
+			seen |= (byte) b;
+			row.append((byte) b);
+		}
+	}
+
+	private void skipLineFeed() throws IOException {
+		if (peek() == '\n') {
+			++position;
+		}
+	}
+
+	private int peek() throws IOException {
+		if (position == limit && ! fill()) return EOF;
+		return bytes[position] & 0xff;
+	}
+
+	private int read() throws IOException {
+		if (position == limit && ! fill()) return EOF;
+		return bytes[position++] & 0xff;
+	}
+
+	private boolean fill() throws IOException {
+		int n = source.read(bytes, 0, BUFFER_SIZE);
+		if (n <= 0) return false;
+		position = 0;
+		limit = n;
+		return true;
+	}
+
+	@Override
+	public void close() throws IOException {
+		source.close();
+	}
+}
@@ -0,0 +1,85 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package com.github.jespersm.janusgraph.csvimport.input;
+
+import java.io.File;
+import java.util.Objects;
+
+/**
+ * A byte range [start, end) of a CSV file, starting and ending on record boundaries.
+ * A compressed file can't be split, so its chunk is the whole file.
+ */
+public final class FileChunk {
+	private final File file;
+	private final long start;
+	private final long end;
+	private final Compression compression;
+	private final boolean header;
+
+	public FileChunk(File file, long start, long end) {
+		this(file, start, end, Compression.NONE, false);
+	}
+
+	/**
+	 * @param header Whether the chunk starts with the header line, which must be skipped
+	 */
+	public FileChunk(File file, long start, long end, Compression compression, boolean header) {
+		this.file = file;
+		this.start = start;
+		this.end = end;
+		this.compression = compression;
+		this.header = header;
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	public long getStart() {
+		return start;
+	}
+
+	public long getEnd() {
+		return end;
+	}
+
+	public Compression getCompression() {
+		return compression;
+	}
+
+	public boolean startsWithHeader() {
+		return header;
+	}
+
+	public long size() {
+		return end - start;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (! (obj instanceof FileChunk)) return false;
+		FileChunk other = (FileChunk) obj;
+		return file.equals(other.file) && start == other.start && end == other.end;
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(file, start, end);
+	}
+
+	@Override
+	public String toString() {
+		return file + "[" + start + "-" + end + "]";
+	}
+}
@@ -0,0 +1,132 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package com.github.jespersm.janusgraph.csvimport.input;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads another stream on a thread of its own, a few large buffers ahead of the consumer,
+ * so decompression overlaps with tokenizing and converting the bytes already read.
+ */
+class ReadAheadInputStream extends InputStream {
+	private static final int BUFFERS_AHEAD = 4;
+	private static final Block END = new Block(new byte[0], 0);
+	private static final long HAND_OFF_WAIT_MILLIS = 100;
+	private static final long CLOSE_WAIT_MILLIS = 10_000;
+
+	private final InputStream source;
+	private final int bufferSize;
+	private final BlockingQueue<Block> ready = new ArrayBlockingQueue<>(BUFFERS_AHEAD);
+	private final Thread reader;
+	private volatile IOException failure = null;
+	private volatile boolean closed = false;
+	private Block current = null;
+	private int position = 0;
+
+	ReadAheadInputStream(InputStream source, int bufferSize, String name) {
+		this.source = source;
+		this.bufferSize = bufferSize;
+		this.reader = new Thread(this::readAhead, "read-ahead " + name);
+		reader.setDaemon(true);
+		reader.start();
+	}
+
+	private void readAhead() {
+		try {
+			while (! closed) {
+				byte[] buffer = new byte[bufferSize];
+				int length = 0;
+				for (int n; length < bufferSize && (n = source.read(buffer, length, bufferSize - length)) > 0; length += n);
+				if (length > 0) {
+					ready.put(new Block(buffer, length));
+				}
+				if (length < bufferSize) break;
+			}
+		} catch (InterruptedException e) {
+			// Closed while waiting
+		} catch (IOException e) {
+			failure = e;
+		} catch (Throwable e) {
+			// Anything thrown by the source, such as a decompressor, must reach the consumer
+			failure = new IOException("Error reading ahead", e);
+		} finally {
+			// Once closed, nobody takes from the queue, so a full queue must not hold the reader
+			try {
+				while (! closed && ! ready.offer(END, HAND_OFF_WAIT_MILLIS, TimeUnit.MILLISECONDS));
+			} catch (InterruptedException e) {
+				// Closed while waiting
+			}
+		}
+	}
+
+	private boolean next() throws IOException {
+		if (current == END) return false;
+		try {
+			current = ready.take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while reading ahead", e);
+		}
+		position = 0;
+		if (current == END) {
+			if (failure != null) throw failure;
+			return false;
+		}
+		return true;
+	}
+
+	@Override
+	public int read() throws IOException {
+		if ((current == null || position == current.length) && ! next()) return -1;
+		return current.data[position++] & 0xff;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) return 0;
+		if ((current == null || position == current.length) && ! next()) return -1;
+		int n = Math.min(len, current.length - position);
+		System.arraycopy(current.data, position, b, off, n);
+		position += n;
+		return n;
+	}
+
+	@Override
+	public void close() throws IOException {
+		closed = true;
+		reader.interrupt();
+		ready.clear();
+		try {
+			// A reader stuck in the source is released by closing the source below
+			reader.join(CLOSE_WAIT_MILLIS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		source.close();
+	}
+
+	private static final class Block {
+		final byte[] data;
+		final int length;
+
+		Block(byte[] data, int length) {
+			this.data = data;
+			this.length = length;
+		}
+	}
+}
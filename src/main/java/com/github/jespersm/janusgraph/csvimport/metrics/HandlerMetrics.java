@@ -0,0 +1,131 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package com.github.jespersm.janusgraph.csvimport.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+/**
+ * The metrics of one handler. Everything recorded is also added to the totals of the import.
+ */
+public class HandlerMetrics {
+	private final Meter rows;
+	private final Counter bytesRead;
+	private final Counter parseNanos;
+	private final Counter convertNanos;
+	private final Timer writes;
+	private final Timer commits;
+	private final Counter retries;
+	private final Counter failedBatches;
+	private final Counter endpointHits;
+	private final Counter endpointMisses;
+	private final HandlerMetrics total;
+
+	HandlerMetrics(MetricRegistry registry, String handler, HandlerMetrics total) {
+		this.rows = registry.meter(ImportMetrics.name(handler, "rows"));
+		this.bytesRead = registry.counter(ImportMetrics.name(handler, "bytes_read"));
+		this.parseNanos = registry.counter(ImportMetrics.name(handler, "parse_nanos"));
+		this.convertNanos = registry.counter(ImportMetrics.name(handler, "convert_nanos"));
+		this.writes = registry.timer(ImportMetrics.name(handler, "write"));
+		this.commits = registry.timer(ImportMetrics.name(handler, "commit"));
+		this.retries = registry.counter(ImportMetrics.name(handler, "retries"));
+		this.failedBatches = registry.counter(ImportMetrics.name(handler, "failed_batches"));
+		this.endpointHits = registry.counter(ImportMetrics.name(handler, "endpoint_hits"));
+		this.endpointMisses = registry.counter(ImportMetrics.name(handler, "endpoint_misses"));
+		this.total = total;
+	}
+
+	/**
+	 * @return metrics which aren't part of any import, for handlers used on their own
+	 */
+	public static HandlerMetrics detached() {
+		return new HandlerMetrics(new MetricRegistry(), "detached", null);
+	}
+
+	public void rowsWritten(int count) {
+		rows.mark(count);
+		if (total != null) total.rowsWritten(count);
+	}
+
+	/**
+	 * @param bytes Bytes of the input files consumed, compressed if the file is
+	 */
+	public void bytesRead(long bytes) {
+		bytesRead.inc(bytes);
+		if (total != null) total.bytesRead(bytes);
+	}
+
+	public void parsed(long parseNanos, long convertNanos) {
+		this.parseNanos.inc(parseNanos);
+		this.convertNanos.inc(convertNanos);
+		if (total != null) total.parsed(parseNanos, convertNanos);
+	}
+
+	/**
+	 * @param nanos Time to write a batch, including its commit
+	 */
+	public void written(long nanos) {
+		writes.update(nanos, TimeUnit.NANOSECONDS);
+		if (total != null) total.written(nanos);
+	}
+
+	public void committed(long nanos) {
+		commits.update(nanos, TimeUnit.NANOSECONDS);
+		if (total != null) total.committed(nanos);
+	}
+
+	public void retried() {
+		retries.inc();
+		if (total != null) total.retried();
+	}
+
+	public void failed() {
+		failedBatches.inc();
+		if (total != null) total.failed();
+	}
+
+	/**
+	 * @param hits Edge endpoints found among the vertices already fetched for the transaction
+	 * @param misses Endpoints which had to be fetched
+	 */
+	public void endpoints(long hits, long misses) {
+		endpointHits.inc(hits);
+		endpointMisses.inc(misses);
+		if (total != null) total.endpoints(hits, misses);
+	}
+
+	public long getEndpointHits() {
+		return endpointHits.getCount();
+	}
+
+	public long getEndpointMisses() {
+		return endpointMisses.getCount();
+	}
+
+	public long getRows() {
+		return rows.getCount();
+	}
+
+	public double getRowRate() {
+		return rows.getOneMinuteRate();
+	}
+
+	public long getBytesRead() {
+		return bytesRead.getCount();
+	}
+}
@@ -0,0 +1,215 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.github.jespersm.janusgraph.csvimport.metrics;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.JmxReporter;
+import com.codahale.metrics.MetricRegistry;
+import com.github.jespersm.janusgraph.csvimport.idmap.IdMap;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * The metrics of an import, named csvimport.&lt;handler&gt;.&lt;metric&gt;, with "total" for the
+ * import as a whole. They are published over JMX, optionally served in the Prometheus text
+ * format over HTTP on the loopback interface, and summarized in a periodic progress line.
+ */
+public class ImportMetrics implements Closeable {
+	private static final Logger LOG = LoggerFactory.getLogger(ImportMetrics.class);
+	static final String PREFIX = "csvimport";
+	static final String TOTAL = "total";
+	private static final String JMX_DOMAIN = "janusgraph-csv-import";
+
+	private final MetricRegistry registry = new MetricRegistry();
+	private final HandlerMetrics total = new HandlerMetrics(registry, TOTAL, null);
+	private final JmxReporter jmxReporter;
+	private final long started = System.nanoTime();
+	private volatile long inputBytes = 0;
+	private volatile LongSupplier queueDepth = () -> 0;
+	private volatile IdMap idMap = null;
+	private HttpServer httpServer = null;
+	private ScheduledExecutorService progressLogger = null;
+	private final List<Phase> phases = new ArrayList<>();
+	private String phaseName = null;
+	private long phaseStarted;
+	private long phaseStartRows;
+
+	public ImportMetrics() {
+		registry.register(name(TOTAL, "queue_depth"), (Gauge<Long>) () -> queueDepth.getAsLong());
+		registry.register(name(TOTAL, "idmap_size"), (Gauge<Long>) () -> idMap != null ? idMap.size() : 0);
+		registry.register(name(TOTAL, "idmap_bytes"), (Gauge<Long>) () -> idMap != null ? idMap.estimatedBytes() : 0);
+		registry.register(name(TOTAL, "input_bytes"), (Gauge<Long>) () -> inputBytes);
+		jmxReporter = JmxReporter.forRegistry(registry).inDomain(JMX_DOMAIN).build();
+		jmxReporter.start();
+	}
+
+	static String name(String handler, String metric) {
+		return MetricRegistry.name(PREFIX, handler, metric);
+	}
+
+	/**
+	 * @param handler Name of the handler, reduced to letters, digits and underscores
+	 */
+	public HandlerMetrics forHandler(String handler) {
+		return new HandlerMetrics(registry, handler.replaceAll("[^A-Za-z0-9_]+", "_"), total);
+	}
+
+	/**
+	 * Add to the total size of the input files, which progress is measured against.
+	 */
+	public void addInputBytes(long bytes) {
+		inputBytes += bytes;
+	}
+
+	public void setQueueDepth(LongSupplier queueDepth) {
+		this.queueDepth = queueDepth;
+	}
+
+	public void setIdMap(IdMap idMap) {
+		this.idMap = idMap;
+	}
+
+	/**
+	 * Serve the metrics in the Prometheus text format at http://localhost:port/metrics
+	 */
+	public void serveHttp(int port) throws IOException {
+		httpServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		httpServer.createContext("/metrics", exchange -> {
+			byte[] body = PrometheusText.render(registry).getBytes(StandardCharsets.UTF_8);
+			exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+			exchange.sendResponseHeaders(200, body.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(body);
+			}
+		});
+		httpServer.start();
+		LOG.info("Serving metrics at http://{}:{}/metrics", InetAddress.getLoopbackAddress().getHostAddress(), port);
+	}
+
+	/**
+	 * Log a progress line with an estimated time of arrival at a fixed interval.
+	 */
+	public void logProgressEvery(long seconds) {
+		progressLogger = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "progress");
+			thread.setDaemon(true);
+			return thread;
+		});
+		progressLogger.scheduleAtFixedRate(this::logProgress, seconds, seconds, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * The ETA assumes the remaining bytes are read at the average rate so far.
+	 */
+	public void logProgress() {
+		long read = total.getBytesRead();
+		long size = Math.max(inputBytes, read);
+		double seconds = (System.nanoTime() - started) / 1e9;
+		String eta = "unknown";
+		if (read > 0 && seconds > 0) {
+			long remaining = (long) ((size - read) / (read / seconds));
+			eta = String.format("%d:%02d:%02d", remaining / 3600, (remaining / 60) % 60, remaining % 60);
+		}
+		IdMap map = idMap;
+		LOG.info("Progress: {} of {} MB read ({}%), {} rows written, {} rows/s, ETA {}, {} batches queued, id map {} ids in {} MB",
+				read >> 20, size >> 20, size > 0 ? 100 * read / size : 100, total.getRows(), Math.round(total.getRowRate()), eta,
+				queueDepth.getAsLong(), map != null ? map.size() : 0, map != null ? map.estimatedBytes() >> 20 : 0);
+	}
+
+	/**
+	 * Start timing a phase of the import, such as loading the vertices.
+	 */
+	public void startPhase(String name) {
+		phaseName = name;
+		phaseStarted = System.nanoTime();
+		phaseStartRows = total.getRows();
+	}
+
+	/**
+	 * Record the rows written and time taken since {@link #startPhase(String)}, and log them.
+	 */
+	public void endPhase() {
+		Phase phase = new Phase(phaseName, total.getRows() - phaseStartRows, System.nanoTime() - phaseStarted);
+		phases.add(phase);
+		if (phase.getRows() > 0) {
+			LOG.info("Finished {}: {} rows in {} ms, {} rows/s", phase.getName(), phase.getRows(), phase.getNanos() / 1000000, Math.round(phase.getRowRate()));
+		} else {
+			LOG.info("Finished {} in {} ms", phase.getName(), phase.getNanos() / 1000000);
+		}
+	}
+
+	/**
+	 * @return the phases ended so far, in order
+	 */
+	public List<Phase> getPhases() {
+		return Collections.unmodifiableList(new ArrayList<>(phases));
+	}
+
+	@Override
+	public void close() {
+		if (progressLogger != null) {
+			progressLogger.shutdownNow();
+		}
+		if (httpServer != null) {
+			httpServer.stop(0);
+		}
+		jmxReporter.stop();
+	}
+
+	/**
+	 * Rows written and time taken by one phase of the import.
+	 */
+	public static final class Phase {
+		private final String name;
+		private final long rows;
+		private final long nanos;
+
+		Phase(String name, long rows, long nanos) {
+			this.name = name;
+			this.rows = rows;
+			this.nanos = nanos;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public long getRows() {
+			return rows;
+		}
+
+		public long getNanos() {
+			return nanos;
+		}
+
+		public double getRowRate() {
+			return nanos > 0 ? rows * 1e9 / nanos : 0;
+		}
+	}
+}
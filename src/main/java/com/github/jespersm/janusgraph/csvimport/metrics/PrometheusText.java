@@ -0,0 +1,101 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package com.github.jespersm.janusgraph.csvimport.metrics;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+
+/**
+ * Renders a registry of csvimport.&lt;handler&gt;.&lt;metric&gt; metrics in the Prometheus text
+ * exposition format, as one family per metric with the handler as a label. Timers become
+ * summaries in seconds, with the sum estimated from the mean of the sampled values.
+ */
+final class PrometheusText {
+	private static final double[] QUANTILES = { 0.5, 0.95, 0.99 };
+
+	private PrometheusText() {
+	}
+
+	static String render(MetricRegistry registry) {
+		Map<String, List<Map.Entry<String, Metric>>> families = new TreeMap<>();
+		registry.getMetrics().forEach((name, metric) -> {
+			String[] parts = name.split("\\.", 3);
+			if (parts.length != 3 || ! parts[0].equals(ImportMetrics.PREFIX)) return;
+			families.computeIfAbsent(parts[2], k -> new ArrayList<>()).add(new AbstractMap.SimpleEntry<>(parts[1], metric));
+		});
+		StringBuilder out = new StringBuilder();
+		families.forEach((metricName, members) -> {
+			String family = ImportMetrics.PREFIX + "_" + metricName;
+			Metric first = members.get(0).getValue();
+			if (first instanceof Counter || first instanceof Meter) {
+				out.append("# TYPE ").append(family).append("_total counter\n");
+				for (Map.Entry<String, Metric> member : members) {
+					long count = member.getValue() instanceof Counter ? ((Counter) member.getValue()).getCount() : ((Meter) member.getValue()).getCount();
+					sample(out, family + "_total", member.getKey(), null, count);
+				}
+				if (first instanceof Meter) {
+					out.append("# TYPE ").append(family).append("_per_second gauge\n");
+					for (Map.Entry<String, Metric> member : members) {
+						sample(out, family + "_per_second", member.getKey(), null, ((Meter) member.getValue()).getOneMinuteRate());
+					}
+				}
+			} else if (first instanceof Timer) {
+				out.append("# TYPE ").append(family).append("_seconds summary\n");
+				for (Map.Entry<String, Metric> member : members) {
+					Timer timer = (Timer) member.getValue();
+					Snapshot snapshot = timer.getSnapshot();
+					for (double quantile : QUANTILES) {
+						sample(out, family + "_seconds", member.getKey(), "quantile=\"" + quantile + "\"", snapshot.getValue(quantile) / 1e9);
+					}
+					sample(out, family + "_seconds_sum", member.getKey(), null, snapshot.getMean() * timer.getCount() / 1e9);
+					sample(out, family + "_seconds_count", member.getKey(), null, timer.getCount());
+				}
+			} else if (first instanceof Gauge) {
+				out.append("# TYPE ").append(family).append(" gauge\n");
+				for (Map.Entry<String, Metric> member : members) {
+					Object value = ((Gauge<?>) member.getValue()).getValue();
+					if (value instanceof Number) {
+						sample(out, family, member.getKey(), null, ((Number) value).doubleValue());
+					}
+				}
+			}
+		});
+		return out.toString();
+	}
+
+	private static void sample(StringBuilder out, String name, String handler, String extraLabel, double value) {
+		out.append(name).append("{handler=\"").append(handler).append('"');
+		if (extraLabel != null) {
+			out.append(',').append(extraLabel);
+		}
+		out.append("} ");
+		if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+			out.append((long) value);
+		} else {
+			out.append(value);
+		}
+		out.append('\n');
+	}
+}
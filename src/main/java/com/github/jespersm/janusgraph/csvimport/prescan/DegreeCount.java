@@ -0,0 +1,167 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package com.github.jespersm.janusgraph.csvimport.prescan;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.jespersm.janusgraph.csvimport.EdgeFileHandler;
+import com.github.jespersm.janusgraph.csvimport.input.FileChunk;
+
+/**
+ * Counts the edges leaving and entering each vertex in a pass over the edge files, to find the
+ * hubs: the vertices with at least a threshold of edges. The degrees are kept in count-min
+ * sketches of a fixed size rather than per vertex, so memory use doesn't grow with the graph.
+ * A degree may be overestimated by a few edges per {@value #WIDTH} edges in the files, but is
+ * never underestimated, so no hub is missed.
+ */
+public class DegreeCount {
+	private static final Logger LOG = LoggerFactory.getLogger(DegreeCount.class);
+	private static final int DEPTH = 4;
+	private static final int WIDTH = 1 << 20;
+
+	private final long threshold;
+	private final AtomicIntegerArray outDegrees = new AtomicIntegerArray(DEPTH * WIDTH);
+	private final AtomicIntegerArray inDegrees = new AtomicIntegerArray(DEPTH * WIDTH);
+	private final Set<Object> hubs = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * @param threshold The number of edges, in and out, which makes a vertex a hub
+	 */
+	public DegreeCount(long threshold) {
+		this.threshold = threshold;
+	}
+
+	/**
+	 * Count the START_ID and END_ID values of the chunks of all the edge files in parallel.
+	 */
+	public void run(List<EdgeFileHandler> handlers, int threads, long chunkSize, boolean multilineFields) throws IOException, InterruptedException {
+		List<Callable<Void>> tasks = new ArrayList<>();
+		for (EdgeFileHandler handler : handlers) {
+			for (FileChunk chunk : handler.split(chunkSize, multilineFields)) {
+				tasks.add(() -> {
+					handler.countDegrees(chunk, this);
+					return null;
+				});
+			}
+		}
+		LOG.info("Counting vertex degrees in {} chunk(s) with {} threads", tasks.size(), threads);
+		long started = System.currentTimeMillis();
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			for (Future<Void> future : executor.invokeAll(tasks)) {
+				future.get();
+			}
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new RuntimeException("Error counting vertex degrees", e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+		LOG.info("Found {} hub(s) with at least {} edges in {} ms", hubs.size(), threshold, System.currentTimeMillis() - started);
+	}
+
+	/**
+	 * Count an edge, as given by the START_ID and END_ID values of its record.
+	 */
+	public void add(Object startId, Object endId) {
+		increment(outDegrees, startId);
+		increment(inDegrees, endId);
+		checkHub(startId);
+		checkHub(endId);
+	}
+
+	private void checkHub(Object id) {
+		if (! hubs.contains(id) && getDegree(id) >= threshold) {
+			hubs.add(id);
+		}
+	}
+
+	public long getOutDegree(Object id) {
+		return estimate(outDegrees, id);
+	}
+
+	public long getInDegree(Object id) {
+		return estimate(inDegrees, id);
+	}
+
+	public long getDegree(Object id) {
+		return getOutDegree(id) + getInDegree(id);
+	}
+
+	/**
+	 * @return the START_ID and END_ID values of the hubs
+	 */
+	public Set<Object> getHubs() {
+		return Collections.unmodifiableSet(hubs);
+	}
+
+	/**
+	 * Log the hubs with the most edges.
+	 */
+	public void logTopHubs(int count) {
+		List<Object> top = new ArrayList<>(hubs);
+		top.sort(Comparator.comparingLong(this::getDegree).reversed());
+		for (Object id : top.subList(0, Math.min(count, top.size()))) {
+			LOG.info("Hub {}: about {} edges out, {} in", id, getOutDegree(id), getInDegree(id));
+		}
+	}
+
+	private static void increment(AtomicIntegerArray sketch, Object id) {
+		long hash = hash(id);
+		for (int row = 0; row < DEPTH; ++row) {
+			sketch.incrementAndGet(cell(hash, row));
+		}
+	}
+
+	private static long estimate(AtomicIntegerArray sketch, Object id) {
+		long hash = hash(id);
+		long min = Long.MAX_VALUE;
+		for (int row = 0; row < DEPTH; ++row) {
+			min = Math.min(min, sketch.get(cell(hash, row)));
+		}
+		return min;
+	}
+
+	/**
+	 * The rows take their cells from two halves of one hash, which is as good as independent hashes.
+	 */
+	private static int cell(long hash, int row) {
+		int column = ((int) hash + row * (int) (hash >>> 32)) & (WIDTH - 1);
+		return row * WIDTH + column;
+	}
+
+	private static long hash(Object id) {
+		long hash = id instanceof Long ? (Long) id : id.hashCode();
+		hash = (hash ^ (hash >>> 33)) * 0xff51afd7ed558ccdL;
+		hash = (hash ^ (hash >>> 33)) * 0xc4ceb9fe1a85ec53L;
+		return hash ^ (hash >>> 33);
+	}
+}
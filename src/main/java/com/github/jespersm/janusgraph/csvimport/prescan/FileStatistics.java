@@ -0,0 +1,106 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.github.jespersm.janusgraph.csvimport.prescan;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.github.jespersm.janusgraph.csvimport.ColumnHandler;
+import com.github.jespersm.janusgraph.csvimport.input.FileChunk;
+
+/**
+ * What a scan found in the files of one handler: rows per chunk, edge labels, and for each
+ * column the number of empty values and of values which couldn't be converted.
+ * Chunks may be added concurrently.
+ */
+public class FileStatistics {
+	private final String description;
+	private final boolean edges;
+	private final ColumnHandler<?>[] columns;
+	private final long[] nulls;
+	private final long[] failures;
+	private final String[] firstFailures;
+	private final Map<String, Long> edgeLabels = new TreeMap<>();
+	private final Map<FileChunk, Long> chunkRows = new HashMap<>();
+	private long rows = 0;
+
+	public FileStatistics(String description, boolean edges, ColumnHandler<?>[] columns) {
+		this.description = description;
+		this.edges = edges;
+		this.columns = columns;
+		this.nulls = new long[columns.length];
+		this.failures = new long[columns.length];
+		this.firstFailures = new String[columns.length];
+	}
+
+	/**
+	 * Add the counts of a chunk, indexed by column.
+	 *
+	 * @param firstFailures A description of the first value of each column which failed to convert, or null
+	 */
+	public synchronized void addChunk(FileChunk chunk, long rows, long[] nulls, long[] failures, String[] firstFailures, Map<String, Long> edgeLabels) {
+		this.rows += rows;
+		chunkRows.put(chunk, rows);
+		for (int c = 0; c < columns.length; ++c) {
+			this.nulls[c] += nulls[c];
+			this.failures[c] += failures[c];
+			if (this.firstFailures[c] == null) {
+				this.firstFailures[c] = firstFailures[c];
+			}
+		}
+		edgeLabels.forEach((label, count) -> this.edgeLabels.merge(label, count, Long::sum));
+	}
+
+	public String getDescription() {
+		return description;
+	}
+
+	public boolean isEdges() {
+		return edges;
+	}
+
+	public synchronized long getRows() {
+		return rows;
+	}
+
+	/**
+	 * @return the number of rows in the chunk, or -1 if it wasn't scanned
+	 */
+	public synchronized long getRows(FileChunk chunk) {
+		return chunkRows.getOrDefault(chunk, -1L);
+	}
+
+	/**
+	 * @return the number of edges of each label
+	 */
+	public synchronized Map<String, Long> getEdgeLabels() {
+		return new TreeMap<>(edgeLabels);
+	}
+
+	public ColumnHandler<?>[] getColumns() {
+		return columns;
+	}
+
+	public synchronized long getNulls(int column) {
+		return nulls[column];
+	}
+
+	public synchronized long getFailures(int column) {
+		return failures[column];
+	}
+
+	public synchronized String getFirstFailure(int column) {
+		return firstFailures[column];
+	}
+}
@@ -0,0 +1,160 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.github.jespersm.janusgraph.csvimport.prescan;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.jespersm.janusgraph.csvimport.AbstractElementFileHandler;
+import com.github.jespersm.janusgraph.csvimport.ColumnHandler;
+import com.github.jespersm.janusgraph.csvimport.EdgeFileHandler;
+import com.github.jespersm.janusgraph.csvimport.VertexFileHandler;
+import com.github.jespersm.janusgraph.csvimport.input.FileChunk;
+
+/**
+ * Reads and converts all the files before loading, without writing anything, to count rows
+ * and edge labels and find empty and malformed values. The counts are used to plan the load.
+ */
+public class Prescan {
+	private static final Logger LOG = LoggerFactory.getLogger(Prescan.class);
+	private static final long MIN_ID_BLOCK_SIZE = 10000;
+	private static final long MAX_ID_BLOCK_SIZE = 1000000;
+	private static final int ID_BLOCKS_PER_WRITER = 10;
+
+	private final Map<AbstractElementFileHandler, FileStatistics> statistics = new LinkedHashMap<>();
+
+	public Prescan(List<VertexFileHandler> vertexHandlers, List<EdgeFileHandler> edgeHandlers) {
+		for (VertexFileHandler handler : vertexHandlers) {
+			statistics.put(handler, new FileStatistics(handler.getDescription(), false, handler.getColumns()));
+		}
+		for (EdgeFileHandler handler : edgeHandlers) {
+			statistics.put(handler, new FileStatistics(handler.getDescription(), true, handler.getColumns()));
+		}
+	}
+
+	/**
+	 * Scan the chunks of all files in parallel, largest first.
+	 */
+	public void run(int threads, long chunkSize, boolean multilineFields) throws IOException, InterruptedException {
+		List<FileChunk> chunks = new ArrayList<>();
+		List<Callable<Void>> tasks = new ArrayList<>();
+		for (Map.Entry<AbstractElementFileHandler, FileStatistics> entry : statistics.entrySet()) {
+			for (FileChunk chunk : entry.getKey().split(chunkSize, multilineFields)) {
+				chunks.add(chunk);
+				tasks.add(() -> {
+					entry.getKey().scanChunk(chunk, entry.getValue());
+					return null;
+				});
+			}
+		}
+		List<Integer> order = new ArrayList<>();
+		for (int i = 0; i < chunks.size(); ++i) {
+			order.add(i);
+		}
+		order.sort((a, b) -> Long.compare(chunks.get(b).size(), chunks.get(a).size()));
+		List<Callable<Void>> sorted = new ArrayList<>();
+		for (int i : order) {
+			sorted.add(tasks.get(i));
+		}
+
+		LOG.info("Scanning {} chunk(s) with {} threads", chunks.size(), threads);
+		long started = System.currentTimeMillis();
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			for (Future<Void> future : executor.invokeAll(sorted)) {
+				future.get();
+			}
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new RuntimeException("Error scanning files", e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+		LOG.info("Scanned {} vertices and {} edges in {} ms", getVertexRows(), getEdgeRows(), System.currentTimeMillis() - started);
+	}
+
+	public long getVertexRows() {
+		return statistics.values().stream().filter(s -> ! s.isEdges()).mapToLong(FileStatistics::getRows).sum();
+	}
+
+	public long getEdgeRows() {
+		return statistics.values().stream().filter(FileStatistics::isEdges).mapToLong(FileStatistics::getRows).sum();
+	}
+
+	/**
+	 * @return the labels found in the TYPE columns of the edge files
+	 */
+	public Set<String> getEdgeLabels() {
+		Set<String> labels = new TreeSet<>();
+		for (FileStatistics file : statistics.values()) {
+			labels.addAll(file.getEdgeLabels().keySet());
+		}
+		return labels;
+	}
+
+	/**
+	 * @return the number of rows in a chunk of the handler, or -1 if it wasn't scanned
+	 */
+	public long getRows(AbstractElementFileHandler handler, FileChunk chunk) {
+		FileStatistics file = statistics.get(handler);
+		return file != null ? file.getRows(chunk) : -1;
+	}
+
+	/**
+	 * Vertices and edges both take their ids from blocks, which each writer thread reserves from
+	 * the id authority. Aim for {@value #ID_BLOCKS_PER_WRITER} blocks per writer over the import:
+	 * few enough to keep the authority out of the way, while not wasting much of the id space.
+	 */
+	public long suggestedIdBlockSize(int writers) {
+		long perBlock = (getVertexRows() + getEdgeRows()) / Math.max(1, writers * ID_BLOCKS_PER_WRITER);
+		long rounded = (perBlock + MIN_ID_BLOCK_SIZE - 1) / MIN_ID_BLOCK_SIZE * MIN_ID_BLOCK_SIZE;
+		return Math.min(MAX_ID_BLOCK_SIZE, Math.max(MIN_ID_BLOCK_SIZE, rounded));
+	}
+
+	public void print(PrintStream out, int writers) {
+		for (FileStatistics file : statistics.values()) {
+			out.printf("%s %s: %d rows%n", file.isEdges() ? "Edges" : "Vertices", file.getDescription(), file.getRows());
+			if (! file.getEdgeLabels().isEmpty()) {
+				out.printf("  labels: %s%n", file.getEdgeLabels());
+			}
+			out.printf("  %-24s %-10s %-8s %14s %10s%n", "column", "type", "tag", "empty", "malformed");
+			ColumnHandler<?>[] columns = file.getColumns();
+			for (int c = 0; c < columns.length; ++c) {
+				ColumnHandler<?> column = columns[c];
+				if (column == null || column.getTag() == ColumnHandler.Tag.IGNORE) continue;
+				double nullRate = file.getRows() > 0 ? 100.0 * file.getNulls(c) / file.getRows() : 0;
+				out.printf("  %-24s %-10s %-8s %6d (%4.1f%%) %10d%s%n", column.getName(), column.getDatatype().getSimpleName(), column.getTag(),
+						file.getNulls(c), nullRate, file.getFailures(c),
+						file.getFirstFailure(c) != null ? ", first: " + file.getFirstFailure(c) : "");
+			}
+		}
+		out.printf("Total: %d vertices, %d edges, edge labels %s%n", getVertexRows(), getEdgeRows(), getEdgeLabels());
+		out.printf("Suggested ids.block-size for %d writers: %d%n", writers, suggestedIdBlockSize(writers));
+	}
+}
@@ -0,0 +1,188 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.github.jespersm.janusgraph.csvimport.prescan;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.jespersm.janusgraph.csvimport.VertexFileHandler;
+import com.github.jespersm.janusgraph.csvimport.idmap.IdMap;
+import com.github.jespersm.janusgraph.csvimport.idmap.IdMapFactory;
+import com.github.jespersm.janusgraph.csvimport.input.CsvChunker;
+import com.github.jespersm.janusgraph.csvimport.input.FileChunk;
+
+/**
+ * Proves that the ID columns of all vertex files, and each UNIQUE column within its label,
+ * hold no duplicates, before any vertex is written. The values of each group go into an
+ * {@link IdMap} of their own, mapping each value to where it was first seen, so every
+ * duplicate can be reported along with the record it duplicates.
+ *
+ * Records are located by chunk and line within the chunk while checking. Only once a duplicate
+ * is found are the lines of its file counted up to each chunk, to report the lines of the file.
+ */
+public class UniquenessCheck implements Closeable {
+	private static final Logger LOG = LoggerFactory.getLogger(UniquenessCheck.class);
+	/** Name of the group of ID columns, which share the id map and must be unique across labels */
+	public static final String ID_GROUP = "ID";
+	private static final int LINE_BITS = 40;
+
+	private final IdMapFactory mapFactory;
+	private final boolean fingerprints;
+	private final Map<String, IdMap> groups = new ConcurrentHashMap<>();
+	private final List<FileChunk> chunks = new ArrayList<>();
+	private long[] firstLines;
+	private final AtomicLong duplicates = new AtomicLong();
+
+	/**
+	 * @param mapFactory Makes the maps of the values, which are fingerprinted for
+	 * string and UUID columns if fingerprints is set, like the id map
+	 */
+	public UniquenessCheck(IdMapFactory mapFactory, boolean fingerprints) {
+		this.mapFactory = mapFactory;
+		this.fingerprints = fingerprints;
+	}
+
+	/**
+	 * Check the chunks of all the vertex files in parallel.
+	 *
+	 * @throws RuntimeException if any duplicates were found, after logging them
+	 */
+	public void run(List<VertexFileHandler> handlers, int threads, long chunkSize, boolean multilineFields) throws IOException, InterruptedException {
+		// The ID columns of all labels share a map, which must take the ID types of all of them
+		Set<Class<?>> idTypes = new LinkedHashSet<>();
+		for (VertexFileHandler handler : handlers) {
+			if (handler.getIdType() != null) {
+				idTypes.add(handler.getIdType());
+			}
+		}
+		if (! idTypes.isEmpty()) {
+			groups.put(ID_GROUP, createMap(idTypes, fingerprints));
+		}
+		List<Callable<Void>> tasks = new ArrayList<>();
+		for (VertexFileHandler handler : handlers) {
+			for (FileChunk chunk : handler.split(chunkSize, multilineFields)) {
+				int index = chunks.size();
+				chunks.add(chunk);
+				tasks.add(() -> {
+					handler.checkUnique(chunk, index, this);
+					return null;
+				});
+			}
+		}
+		firstLines = new long[chunks.size()];
+		LOG.info("Checking unique values in {} chunk(s) with {} threads", chunks.size(), threads);
+		long started = System.currentTimeMillis();
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			for (Future<Void> future : executor.invokeAll(tasks)) {
+				future.get();
+			}
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new RuntimeException("Error checking unique values", e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+		if (duplicates.get() > 0) {
+			throw new RuntimeException("Found " + duplicates.get() + " duplicate value(s) of ID and UNIQUE columns, see the log");
+		}
+		LOG.info("No duplicates in {} ID and UNIQUE column(s), checked in {} ms", groups.size(), System.currentTimeMillis() - started);
+	}
+
+	/**
+	 * Record a value, logging it if it was seen before in the same group.
+	 *
+	 * @param group {@link #ID_GROUP}, or the label and name of a UNIQUE column
+	 * @param chunkIndex The index passed to {@link VertexFileHandler#checkUnique(FileChunk, int, UniquenessCheck)}
+	 * @param lineNumber The line of the chunk the record starts on
+	 */
+	public void add(String group, Class<?> type, Object value, int chunkIndex, long lineNumber) throws IOException {
+		IdMap values = groups.computeIfAbsent(group, g -> createMap(Collections.singleton(type), fingerprints && (type == String.class || type == UUID.class)));
+		long location = ((long) chunkIndex << LINE_BITS) | lineNumber;
+		if (! values.putIfAbsent(value, location)) {
+			duplicates.incrementAndGet();
+			LOG.error("Duplicate {} value {} at {}, first seen at {}", group, value, describe(location), describe(values.get(value)));
+		}
+	}
+
+	/**
+	 * @return the file and line of a location
+	 */
+	private String describe(long location) throws IOException {
+		int chunkIndex = (int) (location >>> LINE_BITS);
+		long line = firstLine(chunkIndex) + (location & ((1L << LINE_BITS) - 1)) - 1;
+		return chunks.get(chunkIndex).getFile() + ":" + line;
+	}
+
+	/**
+	 * @return the line of its file the chunk starts on, counting the lines of the file up to all
+	 * of its chunks the first time
+	 */
+	private synchronized long firstLine(int chunkIndex) throws IOException {
+		if (firstLines[chunkIndex] == 0) {
+			File file = chunks.get(chunkIndex).getFile();
+			List<Integer> indexes = new ArrayList<>();
+			for (int i = 0; i < chunks.size(); ++i) {
+				if (chunks.get(i).getFile().equals(file)) {
+					indexes.add(i);
+				}
+			}
+			indexes.sort(Comparator.comparingLong(i -> chunks.get(i).getStart()));
+			long[] lines = CsvChunker.lineNumbers(file, indexes.stream().mapToLong(i -> chunks.get(i).getStart()).toArray());
+			for (int i = 0; i < lines.length; ++i) {
+				firstLines[indexes.get(i)] = lines[i];
+			}
+		}
+		return firstLines[chunkIndex];
+	}
+
+	public long getDuplicates() {
+		return duplicates.get();
+	}
+
+	private synchronized IdMap createMap(Set<Class<?>> types, boolean fingerprinted) {
+		try {
+			return mapFactory.withFingerprints(fingerprinted).create(types);
+		} catch (IOException e) {
+			throw new RuntimeException("Error creating a map of unique values", e);
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		for (IdMap values : groups.values()) {
+			values.close();
+		}
+	}
+}
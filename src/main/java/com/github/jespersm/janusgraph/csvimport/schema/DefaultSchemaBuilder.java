@@ -12,7 +12,9 @@
 
 package com.github.jespersm.janusgraph.csvimport.schema;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Objects;
@@ -28,7 +30,7 @@ import org.janusgraph.core.PropertyKey;
 import org.janusgraph.core.VertexLabel;
 import org.janusgraph.core.schema.JanusGraphIndex;
 import org.janusgraph.core.schema.JanusGraphManagement;
-import org.janusgraph.core.schema.JanusGraphManagement.IndexBuilder;
+import org.janusgraph.core.schema.SchemaStatus;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -37,9 +39,76 @@ public class DefaultSchemaBuilder implements SchemaBuilder {
 	private static final Logger LOG = LoggerFactory.getLogger(DefaultSchemaBuilder.class);
 
 	private JanusGraphManagement management;
+	private final boolean deferIndexes;
+	private final boolean deferUniqueIndexes;
+	private final List<IndexDefinition> deferredIndexes = new ArrayList<>();
 
 	public DefaultSchemaBuilder(JanusGraph graph) {
+		this(graph, false);
+	}
+
+	/**
+	 * @param deferIndexes Only make labels and keys, and record the new indexes in
+	 * {@link #getDeferredIndexes()}, so they can be built once the data is loaded. Unique
+	 * indexes are still made, as nothing would check their values while loading.
+	 */
+	public DefaultSchemaBuilder(JanusGraph graph, boolean deferIndexes) {
+		this(graph, deferIndexes, false);
+	}
+
+	/**
+	 * @param deferUniqueIndexes Defer the unique indexes too, as their values were checked before
+	 * loading, and they would otherwise make every write of an indexed value take a lock. The values
+	 * aren't checked against the graph, so a unique index of a vertex key which already exists is
+	 * refused: the graph may hold its values.
+	 */
+	public DefaultSchemaBuilder(JanusGraph graph, boolean deferIndexes, boolean deferUniqueIndexes) {
 		this.management = graph.openManagement();
+		this.deferIndexes = deferIndexes;
+		this.deferUniqueIndexes = deferUniqueIndexes;
+	}
+
+	/**
+	 * @return the indexes which don't exist yet, or which an interrupted import left unfinished,
+	 * if indexes are deferred
+	 */
+	public List<IndexDefinition> getDeferredIndexes() {
+		return Collections.unmodifiableList(deferredIndexes);
+	}
+
+	private boolean isDeferred(IndexDefinition index) {
+		return index.isUnique() ? deferUniqueIndexes : deferIndexes;
+	}
+
+	/**
+	 * Create the index now, or defer it.
+	 */
+	private void createIndex(IndexDefinition index) {
+		if (isDeferred(index)) {
+			LOG.info("Deferring index {}", index);
+			deferredIndexes.add(index);
+		} else {
+			index.create(management);
+		}
+	}
+
+	/**
+	 * Defer an existing index which isn't enabled yet, as an import building it was interrupted,
+	 * so it is finished along with the new ones.
+	 */
+	private void deferIfUnfinished(JanusGraphIndex existing, IndexDefinition index) {
+		if (! deferIndexes && ! deferUniqueIndexes) return;
+		SchemaStatus status = existing.getIndexStatus(existing.getFieldKeys()[0]);
+		if (status == SchemaStatus.INSTALLED || status == SchemaStatus.REGISTERED) {
+			if (isDeferred(index)) {
+				LOG.info("Deferring unfinished index {}, which is {}", index, status);
+				deferredIndexes.add(index);
+			} else {
+				LOG.warn("Unique index {} is {}, and is left as it is, as the values it holds weren't checked", index, status);
+			}
+		} else if (status == SchemaStatus.DISABLED) {
+			LOG.warn("Index {} is disabled, and is left as it is", index);
+		}
 	}
 	
 	@Override
@@ -70,15 +139,14 @@ public class DefaultSchemaBuilder implements SchemaBuilder {
 					if (! index.isUnique()) {
 						throw new RuntimeException(indexName + " isn't unique");
 					}
+					deferIfUnfinished(index, new IndexDefinition(indexName, Vertex.class, labelName, true, propertyName));
+					if (deferUniqueIndexes) {
+						throw new RuntimeException("Unique index " + indexName + " already exists, so " + propertyName
+								+ " values can't be written without checking them against the graph");
+					}
  				} else {
 					LOG.info("Creating unique index {}", indexName);
-					doWhenBuilt.add(newVertex -> 
-					management
-						.buildIndex(indexName, Vertex.class)
-						.indexOnly(newVertex)
-						.addKey(propertyKey)
-						.unique()
-						.buildCompositeIndex());
+					doWhenBuilt.add(newVertex -> createIndex(new IndexDefinition(indexName, Vertex.class, labelName, true, propertyName)));
 					
 					// TODO: management.addProperties(vertexLabel, keys)
 				}
@@ -99,14 +167,10 @@ public class DefaultSchemaBuilder implements SchemaBuilder {
 					if (index.isUnique()) {
 						throw new RuntimeException(indexName + " is unique!");
 					}
+					deferIfUnfinished(index, new IndexDefinition(indexName, Vertex.class, labelName, false, propertyName));
  				} else {
 					LOG.info("Creating non-unique index {}", indexName);
-					doWhenBuilt.add(newVertex -> 
-					management
-						.buildIndex(indexName, Vertex.class)
-						.indexOnly(newVertex)
-						.addKey(propertyKey)
-						.buildCompositeIndex());
+					doWhenBuilt.add(newVertex -> createIndex(new IndexDefinition(indexName, Vertex.class, labelName, false, propertyName)));
 				}
 				return this;
 			}
@@ -141,17 +205,10 @@ public class DefaultSchemaBuilder implements SchemaBuilder {
 					if (keys.length != propertyNames.length) {
 						throw new RuntimeException(indexName + " wrong number of indexes, expected " + propertyNames.length + " found " + keys.length);
 					}
+					deferIfUnfinished(index, new IndexDefinition(finalIndexName, Vertex.class, labelName, false, propertyNames));
  				} else {
 					LOG.info("Creating non-unique index {}", indexName);
-					doWhenBuilt.add(newVertex -> { 
-						IndexBuilder builder = management
-							.buildIndex(finalIndexName, Vertex.class)
-							.indexOnly(newVertex);
-						for(String pn : propertyNames) {
-							builder = builder.addKey(management.getPropertyKey(pn));
-						}
-						builder.buildCompositeIndex();
-					});
+					doWhenBuilt.add(newVertex -> createIndex(new IndexDefinition(finalIndexName, Vertex.class, labelName, false, propertyNames)));
  				}
 				return this;
 			}
@@ -241,13 +298,10 @@ public class DefaultSchemaBuilder implements SchemaBuilder {
 			if (! index.isUnique()) {
 				throw new RuntimeException(indexName + " is not unique!");
 			}
+			deferIfUnfinished(index, new IndexDefinition(indexName, indexTargetType, null, true, propertyName));
 			} else {
 			LOG.info("Creating non-unique index {}", indexName);
-			management
-				.buildIndex(indexName, indexTargetType)
-				.addKey(propertyKey)
-				.unique()
-				.buildCompositeIndex();
+			createIndex(new IndexDefinition(indexName, indexTargetType, null, true, propertyName));
 		}
 	}
 
@@ -276,12 +330,10 @@ public class DefaultSchemaBuilder implements SchemaBuilder {
 			if (index.isUnique()) {
 				throw new RuntimeException(indexName + " is unique!");
 			}
+			deferIfUnfinished(index, new IndexDefinition(indexName, Vertex.class, null, false, propertyName));
 			} else {
 			LOG.info("Creating non-unique index {}", indexName);
-			management
-				.buildIndex(indexName, Vertex.class)
-				.addKey(propertyKey)
-				.buildCompositeIndex();
+			createIndex(new IndexDefinition(indexName, Vertex.class, null, false, propertyName));
 		}
 	}
 
@@ -0,0 +1,77 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.github.jespersm.janusgraph.csvimport.schema;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+import org.apache.tinkerpop.gremlin.structure.Element;
+import org.janusgraph.core.PropertyKey;
+import org.janusgraph.core.VertexLabel;
+import org.janusgraph.core.schema.JanusGraphManagement;
+import org.janusgraph.core.schema.JanusGraphManagement.IndexBuilder;
+
+/**
+ * A composite index to create, by the names of its label and keys, so it can be created
+ * in a later management transaction than the one which made the label and keys.
+ */
+public final class IndexDefinition {
+	private final String name;
+	private final Class<? extends Element> elementType;
+	private final String vertexLabel;
+	private final boolean unique;
+	private final String[] propertyNames;
+
+	/**
+	 * @param vertexLabel Only index vertices with this label, or null for all elements
+	 */
+	public IndexDefinition(String name, Class<? extends Element> elementType, String vertexLabel, boolean unique, String... propertyNames) {
+		this.name = name;
+		this.elementType = elementType;
+		this.vertexLabel = vertexLabel;
+		this.unique = unique;
+		this.propertyNames = propertyNames;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public boolean isUnique() {
+		return unique;
+	}
+
+	/**
+	 * Build the index in the given management transaction, where the label and keys must exist.
+	 */
+	public void create(JanusGraphManagement management) {
+		IndexBuilder builder = management.buildIndex(name, elementType);
+		if (vertexLabel != null) {
+			VertexLabel label = Objects.requireNonNull(management.getVertexLabel(vertexLabel), "No vertex label " + vertexLabel);
+			builder = builder.indexOnly(label);
+		}
+		for (String propertyName : propertyNames) {
+			PropertyKey key = Objects.requireNonNull(management.getPropertyKey(propertyName), "No property key " + propertyName);
+			builder = builder.addKey(key);
+		}
+		if (unique) {
+			builder = builder.unique();
+		}
+		builder.buildCompositeIndex();
+	}
+
+	@Override
+	public String toString() {
+		return name + (unique ? " unique" : "") + " on " + (vertexLabel != null ? vertexLabel : elementType.getSimpleName()) + Arrays.toString(propertyNames);
+	}
+}
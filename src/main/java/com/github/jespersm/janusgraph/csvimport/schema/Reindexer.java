@@ -0,0 +1,112 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.github.jespersm.janusgraph.csvimport.schema;
+
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import org.janusgraph.core.JanusGraph;
+import org.janusgraph.core.schema.JanusGraphIndex;
+import org.janusgraph.core.schema.JanusGraphManagement;
+import org.janusgraph.core.schema.SchemaAction;
+import org.janusgraph.core.schema.SchemaStatus;
+import org.janusgraph.diskstorage.BackendException;
+import org.janusgraph.diskstorage.keycolumnvalue.scan.ScanMetrics;
+import org.janusgraph.diskstorage.keycolumnvalue.scan.StandardScanner;
+import org.janusgraph.graphdb.database.StandardJanusGraph;
+import org.janusgraph.graphdb.database.management.GraphIndexStatusReport;
+import org.janusgraph.graphdb.database.management.ManagementSystem;
+import org.janusgraph.graphdb.olap.VertexJobConverter;
+import org.janusgraph.graphdb.olap.job.IndexRepairJob;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Builds indexes on a loaded graph: creates them, waits for them to be registered, fills
+ * them with a scan of the graph, and enables them. Indexes which already exist, left
+ * unfinished by an interrupted import, are taken from where they were left.
+ *
+ * The scan is the one JanusGraph runs for {@link SchemaAction#REINDEX}, but with several
+ * processing threads instead of one.
+ */
+public class Reindexer {
+	private static final Logger LOG = LoggerFactory.getLogger(Reindexer.class);
+	private static final long STATUS_TIMEOUT_MINUTES = 10;
+
+	private final StandardJanusGraph graph;
+	private final int threads;
+
+	public Reindexer(JanusGraph graph, int threads) {
+		this.graph = (StandardJanusGraph) graph;
+		this.threads = threads;
+	}
+
+	public void build(List<IndexDefinition> indexes) throws InterruptedException {
+		JanusGraphManagement management = graph.openManagement();
+		for (IndexDefinition index : indexes) {
+			JanusGraphIndex existing = management.getGraphIndex(index.getName());
+			if (existing == null) {
+				LOG.info("Creating index {}", index);
+				index.create(management);
+			} else if (existing.getIndexStatus(existing.getFieldKeys()[0]) == SchemaStatus.INSTALLED) {
+				LOG.info("Registering existing index {}", index);
+				management.updateIndex(existing, SchemaAction.REGISTER_INDEX);
+			} else {
+				LOG.info("Finishing existing index {}", index);
+			}
+		}
+		management.commit();
+
+		for (IndexDefinition index : indexes) {
+			awaitStatus(index, SchemaStatus.REGISTERED);
+		}
+		for (IndexDefinition index : indexes) {
+			reindex(index);
+			management = graph.openManagement();
+			management.updateIndex(management.getGraphIndex(index.getName()), SchemaAction.ENABLE_INDEX);
+			management.commit();
+			awaitStatus(index, SchemaStatus.ENABLED);
+		}
+	}
+
+	private void reindex(IndexDefinition index) throws InterruptedException {
+		LOG.info("Indexing {} with {} threads", index.getName(), threads);
+		long started = System.currentTimeMillis();
+		StandardScanner.Builder scan = graph.getBackend().buildEdgeScanJob();
+		scan.setJobId("reindex-" + index.getName());
+		scan.setNumProcessingThreads(threads);
+		scan.setJob(VertexJobConverter.convert(graph, new IndexRepairJob(index.getName(), null)));
+		try {
+			ScanMetrics metrics = scan.execute().get();
+			LOG.info("Indexed {} in {} ms, {} index records added, {} failed vertices", index.getName(), System.currentTimeMillis() - started,
+					metrics.getCustom(IndexRepairJob.ADDED_RECORDS_COUNT), metrics.get(ScanMetrics.Metric.FAILURE));
+			if (metrics.get(ScanMetrics.Metric.FAILURE) > 0) {
+				throw new RuntimeException("Indexing " + index.getName() + " failed for " + metrics.get(ScanMetrics.Metric.FAILURE) + " vertices");
+			}
+		} catch (BackendException | ExecutionException e) {
+			throw new RuntimeException("Error indexing " + index.getName(), e);
+		}
+	}
+
+	private void awaitStatus(IndexDefinition index, SchemaStatus status) throws InterruptedException {
+		GraphIndexStatusReport report = ManagementSystem.awaitGraphIndexStatus(graph, index.getName())
+				.status(status)
+				.timeout(STATUS_TIMEOUT_MINUTES, ChronoUnit.MINUTES)
+				.call();
+		if (! report.getSucceeded()) {
+			throw new RuntimeException("Index " + index.getName() + " isn't " + status + " after " + STATUS_TIMEOUT_MINUTES + " minutes: " + report);
+		}
+		LOG.info("Index {} is {}", index.getName(), status);
+	}
+}
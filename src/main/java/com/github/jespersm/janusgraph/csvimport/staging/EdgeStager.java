@@ -0,0 +1,315 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.github.jespersm.janusgraph.csvimport.staging;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongUnaryOperator;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.jespersm.janusgraph.csvimport.BatchSink;
+import com.github.jespersm.janusgraph.csvimport.EdgeFileHandler;
+import com.github.jespersm.janusgraph.csvimport.RowBatch;
+
+/**
+ * Sorts converted edge rows by the storage keys of their start and end vertices before they are
+ * written, so the edges of each vertex are written together, and the vertices in the order the
+ * storage backend keeps them, instead of scattered over it.
+ *
+ * Rows submitted by the parsers are collected until there are enough for a run, which is then
+ * sorted and spilled to a file in the staging directory. {@link #merge(BatchSink)} merges the
+ * runs and passes the rows on in batches, each holding the rows of one handler. At most
+ * {@value #MAX_FAN_IN} runs are read at once, so with more runs, groups of them are first
+ * merged into longer runs, in as many passes as it takes.
+ */
+public class EdgeStager implements BatchSink, Closeable {
+	private static final Logger LOG = LoggerFactory.getLogger(EdgeStager.class);
+	private static final int BUFFER_SIZE = 1 << 16;
+	private static final int MAX_FAN_IN = 64;
+	private static final Comparator<StagedEdge> ORDER = (a, b) -> {
+		int order = Long.compareUnsigned(a.startKey, b.startKey);
+		return order != 0 ? order : Long.compareUnsigned(a.endKey, b.endKey);
+	};
+
+	private final File directory;
+	private final List<EdgeFileHandler> handlers;
+	private final int runRows;
+	private final LongUnaryOperator storageKey;
+	private final List<File> runs = new ArrayList<>();
+	private final AtomicInteger runCounter = new AtomicInteger();
+	private List<StagedEdge> buffer = new ArrayList<>();
+	private volatile IOException failure = null;
+
+	/**
+	 * @param runRows Rows to sort in memory before spilling them to a run file
+	 * @param storageKey The key a vertex id is stored under, compared as an unsigned long
+	 */
+	public EdgeStager(File directory, List<EdgeFileHandler> handlers, int runRows, LongUnaryOperator storageKey) throws IOException {
+		if (! directory.isDirectory() && ! directory.mkdirs()) {
+			throw new IOException("Can't create the staging directory " + directory);
+		}
+		this.directory = directory;
+		this.handlers = handlers;
+		this.runRows = runRows;
+		this.storageKey = storageKey;
+	}
+
+	/**
+	 * Add the rows of a batch to the current run, spilling it if it is full. Called from parser threads.
+	 */
+	@Override
+	public void submit(RowBatch batch) {
+		int handlerIndex = handlers.indexOf(batch.getHandler());
+		EdgeFileHandler handler = handlers.get(handlerIndex);
+		List<StagedEdge> full = null;
+		synchronized (this) {
+			for (Object[] row : batch.getRows()) {
+				buffer.add(new StagedEdge(storageKey.applyAsLong((Long) row[handler.getStartColumn()]),
+						storageKey.applyAsLong((Long) row[handler.getEndColumn()]), handlerIndex, row));
+			}
+			if (buffer.size() >= runRows) {
+				full = buffer;
+				buffer = new ArrayList<>();
+			}
+		}
+		if (full != null) {
+			spill(full);
+		}
+	}
+
+	/**
+	 * Spill the rows which didn't fill a run. Call once the parsers are done.
+	 */
+	public void finishRuns() {
+		List<StagedEdge> rest;
+		synchronized (this) {
+			rest = buffer;
+			buffer = new ArrayList<>();
+		}
+		if (! rest.isEmpty()) {
+			spill(rest);
+		}
+	}
+
+	private void spill(List<StagedEdge> edges) {
+		edges.sort(ORDER);
+		File run = newRun();
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run), BUFFER_SIZE))) {
+			out.writeLong(edges.size());
+			for (StagedEdge edge : edges) {
+				edge.write(out);
+			}
+		} catch (IOException e) {
+			failure = e;
+			throw new UncheckedIOException("Error spilling edges to " + run, e);
+		}
+		LOG.debug("Spilled {} edges to {}", edges.size(), run);
+	}
+
+	private File newRun() {
+		File run = new File(directory, "edges-" + runCounter.incrementAndGet() + ".run");
+		synchronized (runs) {
+			runs.add(run);
+		}
+		return run;
+	}
+
+	/**
+	 * Merge the runs, submitting the edges in order of the storage keys of their start and end
+	 * vertices, in batches as large as the commit policies of their handlers allow.
+	 */
+	public void merge(BatchSink writers) throws IOException, InterruptedException {
+		if (failure != null) {
+			throw new IOException("Staging the edges failed", failure);
+		}
+		List<File> pending = new ArrayList<>(runs);
+		while (pending.size() > MAX_FAN_IN) {
+			LOG.info("Merging {} runs of sorted edges into {}", pending.size(), (pending.size() + MAX_FAN_IN - 1) / MAX_FAN_IN);
+			List<File> merged = new ArrayList<>();
+			for (int from = 0; from < pending.size(); from += MAX_FAN_IN) {
+				merged.add(mergeRuns(pending.subList(from, Math.min(from + MAX_FAN_IN, pending.size()))));
+			}
+			pending = merged;
+		}
+		LOG.info("Merging {} run(s) of sorted edges", pending.size());
+		try (RunMerger merger = new RunMerger(pending)) {
+			RowBatch[] batches = new RowBatch[handlers.size()];
+			long merged = 0;
+			for (StagedEdge edge = merger.next(); edge != null; edge = merger.next()) {
+				EdgeFileHandler handler = handlers.get(edge.handler);
+				if (batches[edge.handler] == null) {
+					batches[edge.handler] = new RowBatch(handler, null);
+				}
+				RowBatch batch = batches[edge.handler];
+				batch.add(edge.row);
+				if (handler.getCommitPolicy().isFull(batch.size(), batch.getEstimatedBytes())) {
+					writers.submit(batch);
+					batches[edge.handler] = null;
+				}
+				++merged;
+			}
+			for (RowBatch batch : batches) {
+				if (batch != null) {
+					writers.submit(batch);
+				}
+			}
+			LOG.info("Merged {} edges", merged);
+		}
+	}
+
+	/**
+	 * Merge runs into a new one, deleting them.
+	 */
+	private File mergeRuns(List<File> inputs) throws IOException {
+		File run = newRun();
+		try (RunMerger merger = new RunMerger(inputs);
+				DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run), BUFFER_SIZE))) {
+			out.writeLong(merger.size());
+			for (StagedEdge edge = merger.next(); edge != null; edge = merger.next()) {
+				edge.write(out);
+			}
+		}
+		for (File input : inputs) {
+			if (! input.delete()) {
+				LOG.warn("Couldn't delete {}", input);
+			}
+		}
+		return run;
+	}
+
+	/**
+	 * Delete the run files.
+	 */
+	@Override
+	public void close() {
+		for (File run : runs) {
+			if (run.exists() && ! run.delete()) {
+				LOG.warn("Couldn't delete {}", run);
+			}
+		}
+	}
+
+	private static final class StagedEdge {
+		final long startKey;
+		final long endKey;
+		final int handler;
+		final Object[] row;
+
+		StagedEdge(long startKey, long endKey, int handler, Object[] row) {
+			this.startKey = startKey;
+			this.endKey = endKey;
+			this.handler = handler;
+			this.row = row;
+		}
+
+		void write(DataOutputStream out) throws IOException {
+			out.writeLong(startKey);
+			out.writeLong(endKey);
+			out.writeShort(handler);
+			RowCodec.write(out, row);
+		}
+	}
+
+	/**
+	 * The edges of several runs, in order.
+	 */
+	private static final class RunMerger implements Closeable {
+		private final List<RunReader> readers = new ArrayList<>();
+		private final PriorityQueue<RunReader> queue;
+		private long size = 0;
+
+		RunMerger(List<File> runs) throws IOException {
+			queue = new PriorityQueue<>(Math.max(1, runs.size()), Comparator.comparing((RunReader reader) -> reader.current, ORDER));
+			try {
+				for (File run : runs) {
+					RunReader reader = new RunReader(run);
+					readers.add(reader);
+					size += reader.remaining;
+					if (reader.advance()) {
+						queue.add(reader);
+					}
+				}
+			} catch (IOException e) {
+				close();
+				throw e;
+			}
+		}
+
+		long size() {
+			return size;
+		}
+
+		/**
+		 * @return the next edge, or null when all runs are read
+		 */
+		StagedEdge next() throws IOException {
+			RunReader reader = queue.poll();
+			if (reader == null) {
+				return null;
+			}
+			StagedEdge edge = reader.current;
+			if (reader.advance()) {
+				queue.add(reader);
+			}
+			return edge;
+		}
+
+		@Override
+		public void close() throws IOException {
+			for (RunReader reader : readers) {
+				reader.close();
+			}
+		}
+	}
+
+	private static final class RunReader implements Closeable {
+		private final DataInputStream in;
+		private long remaining;
+		StagedEdge current;
+
+		RunReader(File run) throws IOException {
+			this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(run), BUFFER_SIZE));
+			this.remaining = in.readLong();
+		}
+
+		boolean advance() throws IOException {
+			if (remaining == 0) {
+				current = null;
+				return false;
+			}
+			--remaining;
+			current = new StagedEdge(in.readLong(), in.readLong(), in.readUnsignedShort(), RowCodec.read(in));
+			return true;
+		}
+
+		@Override
+		public void close() throws IOException {
+			in.close();
+		}
+	}
+}
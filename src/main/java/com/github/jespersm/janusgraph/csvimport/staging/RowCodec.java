@@ -0,0 +1,135 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.github.jespersm.janusgraph.csvimport.staging;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.UUID;
+
+/**
+ * Writes converted rows to run files and reads them back, with a tag byte ahead of each
+ * value for the datatypes of {@link com.github.jespersm.janusgraph.csvimport.ColumnHandler}s.
+ */
+final class RowCodec {
+	private static final byte NULL = 0;
+	private static final byte STRING = 1;
+	private static final byte LONG = 2;
+	private static final byte INTEGER = 3;
+	private static final byte DOUBLE = 4;
+	private static final byte FLOAT = 5;
+	private static final byte BOOLEAN = 6;
+	private static final byte BYTE = 7;
+	private static final byte SHORT = 8;
+	private static final byte CHARACTER = 9;
+	private static final byte DATE = 10;
+	private static final byte UUID_VALUE = 11;
+
+	private RowCodec() {
+	}
+
+	static void write(DataOutput out, Object[] row) throws IOException {
+		out.writeShort(row.length);
+		for (Object value : row) {
+			writeValue(out, value);
+		}
+	}
+
+	static Object[] read(DataInput in) throws IOException {
+		Object[] row = new Object[in.readUnsignedShort()];
+		for (int i = 0; i < row.length; ++i) {
+			row[i] = readValue(in);
+		}
+		return row;
+	}
+
+	private static void writeValue(DataOutput out, Object value) throws IOException {
+		if (value == null) {
+			out.writeByte(NULL);
+		} else if (value instanceof String) {
+			byte[] bytes = ((String) value).getBytes(StandardCharsets.UTF_8);
+			out.writeByte(STRING);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		} else if (value instanceof Long) {
+			out.writeByte(LONG);
+			out.writeLong((Long) value);
+		} else if (value instanceof Integer) {
+			out.writeByte(INTEGER);
+			out.writeInt((Integer) value);
+		} else if (value instanceof Double) {
+			out.writeByte(DOUBLE);
+			out.writeDouble((Double) value);
+		} else if (value instanceof Float) {
+			out.writeByte(FLOAT);
+			out.writeFloat((Float) value);
+		} else if (value instanceof Boolean) {
+			out.writeByte(BOOLEAN);
+			out.writeBoolean((Boolean) value);
+		} else if (value instanceof Byte) {
+			out.writeByte(BYTE);
+			out.writeByte((Byte) value);
+		} else if (value instanceof Short) {
+			out.writeByte(SHORT);
+			out.writeShort((Short) value);
+		} else if (value instanceof Character) {
+			out.writeByte(CHARACTER);
+			out.writeChar((Character) value);
+		} else if (value instanceof Date) {
+			out.writeByte(DATE);
+			out.writeLong(((Date) value).getTime());
+		} else if (value instanceof UUID) {
+			out.writeByte(UUID_VALUE);
+			out.writeLong(((UUID) value).getMostSignificantBits());
+			out.writeLong(((UUID) value).getLeastSignificantBits());
+		} else {
+			throw new IllegalArgumentException("Can't stage a value of type " + value.getClass().getName());
+		}
+	}
+
+	private static Object readValue(DataInput in) throws IOException {
+		byte tag = in.readByte();
+		switch (tag) {
+		case NULL:
+			return null;
+		case STRING:
+			byte[] bytes = new byte[in.readInt()];
+			in.readFully(bytes);
+			return new String(bytes, StandardCharsets.UTF_8);
+		case LONG:
+			return in.readLong();
+		case INTEGER:
+			return in.readInt();
+		case DOUBLE:
+			return in.readDouble();
+		case FLOAT:
+			return in.readFloat();
+		case BOOLEAN:
+			return in.readBoolean();
+		case BYTE:
+			return in.readByte();
+		case SHORT:
+			return in.readShort();
+		case CHARACTER:
+			return in.readChar();
+		case DATE:
+			return new Date(in.readLong());
+		case UUID_VALUE:
+			return new UUID(in.readLong(), in.readLong());
+		default:
+			throw new IOException("Unknown value tag " + tag + " in run file");
+		}
+	}
+}
@@ -0,0 +1,138 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.github.jespersm.janusgraph.csvimport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.janusgraph.core.JanusGraph;
+import org.junit.Test;
+
+import com.github.jespersm.janusgraph.csvimport.commit.BackoffRetry;
+import com.github.jespersm.janusgraph.csvimport.commit.CommitPolicy;
+import com.github.jespersm.janusgraph.csvimport.commit.RowCountCommitPolicy;
+import com.github.jespersm.janusgraph.csvimport.metrics.HandlerMetrics;
+
+/**
+ * A batch which can't be written must fail the import, and neither the parsers nor the
+ * import may be left waiting on writers which have stopped.
+ */
+public class WriterPoolTest {
+	private static final BackoffRetry NO_RETRIES = new BackoffRetry(0, 1, 1);
+
+	@Test(timeout = 10_000)
+	public void writesOnAfterAnError() throws Exception {
+		TestWriter writer = new TestWriter(batch -> {
+			if (batch.getRows().get(0)[0].equals("fail")) throw new StackOverflowError();
+		});
+		WriterPool pool = new WriterPool(null, 1, 2, NO_RETRIES);
+		pool.submit(writer.batch("fail"));
+		for (int i = 0; i < 5; ++i) {
+			pool.submit(writer.batch("ok"));
+		}
+		try {
+			pool.finish();
+			fail("The failed batch wasn't reported");
+		} catch (RuntimeException e) {
+			assertTrue(e.getMessage(), e.getMessage().startsWith("1 batch(es) could not be written"));
+		}
+		assertEquals(6, writer.written.get());
+		assertEquals(0, writer.pending.get());
+		assertTrue(writer.aborted);
+	}
+
+	@Test(timeout = 10_000)
+	public void failsInsteadOfWaitingOnStoppedWriters() throws Exception {
+		// Interrupted writers stop taking batches
+		TestWriter writer = new TestWriter(batch -> Thread.currentThread().interrupt());
+		WriterPool pool = new WriterPool(null, 2, 2, NO_RETRIES);
+		try {
+			for (int i = 0; i < 100; ++i) {
+				pool.submit(writer.batch("ok"));
+			}
+			fail("Batches were queued for stopped writers");
+		} catch (RuntimeException e) {
+			assertTrue(e.getMessage(), e.getMessage().startsWith("The writers of test have stopped"));
+		}
+		try {
+			pool.finish();
+			fail("The stopped writers weren't reported");
+		} catch (RuntimeException e) {
+			assertTrue(e.getMessage(), e.getMessage().startsWith("2 writer(s) stopped before finishing"));
+		}
+		assertEquals(2, writer.written.get());
+		assertEquals(2, writer.pending.get());
+	}
+
+	private interface Write {
+		void write(RowBatch batch);
+	}
+
+	private static final class TestWriter implements BatchWriter {
+		private final Write write;
+		private final CommitPolicy commitPolicy = new RowCountCommitPolicy(1);
+		private final HandlerMetrics metrics = HandlerMetrics.detached();
+		final AtomicInteger written = new AtomicInteger();
+		final AtomicInteger pending = new AtomicInteger();
+		volatile boolean aborted = false;
+
+		TestWriter(Write write) {
+			this.write = write;
+		}
+
+		RowBatch batch(String value) {
+			RowBatch batch = new RowBatch(this, null);
+			batch.add(new Object[] { value });
+			return batch;
+		}
+
+		@Override
+		public String getDescription() {
+			return "test";
+		}
+
+		@Override
+		public void writeBatch(JanusGraph graph, RowBatch batch) {
+			written.incrementAndGet();
+			write.write(batch);
+		}
+
+		@Override
+		public CommitPolicy getCommitPolicy() {
+			return commitPolicy;
+		}
+
+		@Override
+		public HandlerMetrics getMetrics() {
+			return metrics;
+		}
+
+		@Override
+		public void workAdded() {
+			pending.incrementAndGet();
+		}
+
+		@Override
+		public void workDone() {
+			pending.decrementAndGet();
+		}
+
+		@Override
+		public void abort() {
+			aborted = true;
+		}
+	}
+}
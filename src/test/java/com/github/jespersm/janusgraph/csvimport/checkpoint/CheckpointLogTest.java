@@ -0,0 +1,114 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.github.jespersm.janusgraph.csvimport.checkpoint;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.github.jespersm.janusgraph.csvimport.idmap.IdMap;
+import com.github.jespersm.janusgraph.csvimport.idmap.ObjectIdMap;
+import com.github.jespersm.janusgraph.csvimport.input.FileChunk;
+
+/**
+ * A crash can leave anything after the last complete entry, which resuming must cut off
+ * before appending to the log again.
+ */
+public class CheckpointLogTest {
+	private static final FileChunk FIRST = new FileChunk(new File("nodes.csv"), 0, 1000);
+	private static final FileChunk SECOND = new FileChunk(new File("nodes.csv"), 1000, 2000);
+
+	private static final byte[][] TAILS = {
+			{ 0, 0 },
+			{ 0, 0, 0, 12, 1, 2, 3, 4, 5 },
+			{ 0, 0, 0, 4, 1, 2, 3, 4, 5, 6, 7, 8 },
+			{ -1, -1, -1, -1, 0, 0, 0, 0 },
+			{ 0x7f, 0, 0, 0, 0, 0, 0, 0, 1, 2, 3 } };
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void discardsWhatFollowsTheLastCompleteEntry() throws Exception {
+		for (byte[] tail : TAILS) {
+			File directory = folder.newFolder();
+			File file = new File(directory, "checkpoint.log");
+			try (CheckpointLog log = new CheckpointLog(directory, false)) {
+				log.committed(FIRST, 0, 10, false, Arrays.asList(1L, "two", 3), new long[] { 101, 102, 103 });
+				log.committed(FIRST, 20, 25, true, null, null);
+			}
+			long valid = file.length();
+			try (FileOutputStream out = new FileOutputStream(file, true)) {
+				out.write(tail);
+			}
+
+			try (CheckpointLog log = new CheckpointLog(directory, true)) {
+				assertEquals("Length with tail " + Arrays.toString(tail), valid, file.length());
+				assertProgressOfFirst(log.progress(FIRST));
+				assertEquals(0, log.progress(SECOND).committedRecords());
+				log.committed(SECOND, 0, 5, true, Collections.singletonList(4L), new long[] { 104 });
+			}
+
+			try (CheckpointLog log = new CheckpointLog(directory, true)) {
+				assertProgressOfFirst(log.progress(FIRST));
+				assertTrue(log.progress(SECOND).isDone());
+				IdMap ids = new ObjectIdMap(0);
+				log.restoreIds(ids);
+				assertEquals(4, ids.size());
+				assertEquals(101, ids.get(1L));
+				assertEquals(102, ids.get("two"));
+				assertEquals(103, ids.get(3));
+				assertEquals(104, ids.get(4L));
+			}
+		}
+	}
+
+	@Test
+	public void startsOverUnlessResuming() throws Exception {
+		File directory = folder.newFolder();
+		try (CheckpointLog log = new CheckpointLog(directory, false)) {
+			log.committed(FIRST, 0, 10, true, null, null);
+		}
+		try (CheckpointLog log = new CheckpointLog(directory, false)) {
+			assertEquals(0, log.progress(FIRST).committedRecords());
+		}
+		assertEquals(0, new File(directory, "checkpoint.log").length());
+	}
+
+	@Test(expected = IOException.class)
+	public void refusesToResumeWithoutALog() throws Exception {
+		new CheckpointLog(folder.newFolder(), true).close();
+	}
+
+	private static void assertProgressOfFirst(ChunkProgress progress) {
+		assertTrue(progress.isCommitted(1));
+		assertTrue(progress.isCommitted(10));
+		assertFalse(progress.isCommitted(11));
+		assertFalse(progress.isCommitted(20));
+		assertTrue(progress.isCommitted(21));
+		assertTrue(progress.isCommitted(25));
+		assertFalse(progress.isCommitted(26));
+		assertFalse(progress.isDone());
+		assertEquals(15, progress.committedRecords());
+	}
+}
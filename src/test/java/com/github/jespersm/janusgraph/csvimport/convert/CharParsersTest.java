@@ -0,0 +1,174 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.github.jespersm.janusgraph.csvimport.convert;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.junit.Test;
+
+/**
+ * The parsers must accept and reject the same input as the JDK parsers they replace, and
+ * return the same values. Fields come as CharSequences which aren't Strings, so the input
+ * is passed as a StringBuilder.
+ */
+public class CharParsersTest {
+	private static final String NUMBER_CHARS = "0123456789+-.eE xXpPdDfF٣５²aN";
+	private static final String UUID_CHARS = "0123456789abcdefABCDEFg-+ １";
+	private static final int RANDOM_INPUTS = 50_000;
+
+	private static final List<String> INTEGERS = Arrays.asList(
+			"", "+", "-", "0", "-0", "+0", "00", "007", "1", "-1", "+1", "1 ", " 1", "1_000", "1.0", "1e3",
+			"127", "128", "-128", "-129", "32767", "32768", "-32768", "-32769",
+			"2147483647", "2147483648", "-2147483648", "-2147483649",
+			"9223372036854775807", "9223372036854775808", "-9223372036854775808", "-9223372036854775809",
+			"99999999999999999999", "--1", "+-1", "0x10",
+			"٣", "-٣٤", "５０", "1٣", "²", "١٢٣٤٥٦٧٨٩٠١٢٣٤٥٦٧٨٩٠");
+
+	private static final List<String> DOUBLES = Arrays.asList(
+			"", "+", "-", ".", "-.", "e", "e1", ".e1", "1e", "1e+", "1e-", "0", "-0", "+0", "0.0", "-0.0", "00.00",
+			"1", "-1", "1.", ".5", "-.5", "1.5", "0.1", "0.3", "3.14159", "1e10", "1E10", "1e+10", "1e-10",
+			"123456789012345", "1234567890123456", "12345678901234567890", "0.000000000000000000001",
+			"1.7976931348623157e308", "1.7976931348623159e308", "4.9e-324", "2.4e-324", "1e22", "1e23", "9007199254740993",
+			"1e400", "-1e400", "1e-400", "1e99999", "0e99999", "1e9999", "1e-9999",
+			"NaN", "-NaN", "Infinity", "-Infinity", "+Infinity", "infinity",
+			" 1.5", "1.5 ", "\t1", "1.5d", "1.5f", "1.5D", "1e5d", "0x1p3", "0x1.8p1", "1..5", "1.5.", "1e1.5", "1e1e1",
+			"٣", "1e٣", "1.٣", "５.0");
+
+	private static final List<String> UUIDS = Arrays.asList(
+			"", "0-0-0-0-0", "1-2-3-4-5", "00000000-0000-0000-0000-000000000000", "ffffffff-ffff-ffff-ffff-ffffffffffff",
+			"FFFFFFFF-FFFF-FFFF-FFFF-FFFFFFFFFFFF", "123e4567-e89b-12d3-a456-426614174000", "123e4567-e89b-12d3-a456-42661417400",
+			"123e4567-e89b-12d3-a456-4266141740000", "123e4567e89b-12d3-a456-4266141740000", "123e4567-e89b-12d3-a456_426614174000",
+			"+23e4567-e89b-12d3-a456-426614174000", "123e4567-+89b-12d3-a456-426614174000", "123e4567-e89b-12d3-a456-+26614174000",
+			"g23e4567-e89b-12d3-a456-426614174000", "123e4567-e89b-12d3-a456-42661417400g", " 23e4567-e89b-12d3-a456-426614174000",
+			"１２３e4567-e89b-12d3-a456-426614174000", "123e4567-e89b-12d3-a456", "12345678901234567-1-1-1-1");
+
+	@Test
+	public void parsesLongsLikeTheJdk() {
+		for (String input : integers()) {
+			assertSameOutcome(input, Long::valueOf, CharParsers::toLong);
+		}
+	}
+
+	@Test
+	public void parsesSmallerIntegersLikeTheJdk() {
+		for (String input : integers()) {
+			assertSameOutcome(input, Integer::valueOf, CharParsers::toInteger);
+			assertSameOutcome(input, Short::valueOf, CharParsers::toShort);
+			assertSameOutcome(input, Byte::valueOf, CharParsers::toByte);
+		}
+	}
+
+	@Test
+	public void parsesDoublesLikeTheJdk() {
+		List<String> inputs = new ArrayList<>(DOUBLES);
+		inputs.addAll(INTEGERS);
+		Random random = new Random(42);
+		for (int i = 0; i < RANDOM_INPUTS; ++i) {
+			inputs.add(Double.toString(Double.longBitsToDouble(random.nextLong())));
+			inputs.add(randomDecimal(random));
+			inputs.add(randomString(random, NUMBER_CHARS));
+		}
+		for (String input : inputs) {
+			assertSameOutcome(input, Double::valueOf, CharParsers::toDouble);
+		}
+	}
+
+	@Test
+	public void parsesBooleansLikeTheJdk() {
+		for (String input : Arrays.asList("", "true", "TRUE", "True", "tRuE", "false", "yes", "1", "true ", " true", "truth", "tru")) {
+			assertSameOutcome(input, Boolean::valueOf, CharParsers::toBoolean);
+		}
+	}
+
+	@Test
+	public void parsesUuidsLikeTheJdk() {
+		List<String> inputs = new ArrayList<>(UUIDS);
+		Random random = new Random(42);
+		for (int i = 0; i < RANDOM_INPUTS; ++i) {
+			String uuid = new UUID(random.nextLong(), random.nextLong()).toString();
+			inputs.add(uuid);
+			inputs.add(uuid.toUpperCase());
+			// One character replaced, which is mostly still a hex digit
+			char[] chars = uuid.toCharArray();
+			chars[random.nextInt(chars.length)] = UUID_CHARS.charAt(random.nextInt(UUID_CHARS.length()));
+			inputs.add(new String(chars));
+		}
+		for (String input : inputs) {
+			assertSameOutcome(input, UUID::fromString, CharParsers::toUUID);
+		}
+	}
+
+	private static List<String> integers() {
+		List<String> inputs = new ArrayList<>(INTEGERS);
+		Random random = new Random(42);
+		for (int i = 0; i < RANDOM_INPUTS; ++i) {
+			inputs.add(Long.toString(random.nextLong()));
+			inputs.add(Long.toString(random.nextInt(1 << 20) - (1 << 19)));
+			inputs.add(randomString(random, NUMBER_CHARS));
+		}
+		return inputs;
+	}
+
+	/**
+	 * @return a decimal number with up to 20 digits and an optional exponent, around the
+	 * limits of the exact path of the parser
+	 */
+	private static String randomDecimal(Random random) {
+		StringBuilder s = new StringBuilder();
+		if (random.nextBoolean()) {
+			s.append(random.nextBoolean() ? '-' : '+');
+		}
+		int digits = 1 + random.nextInt(20);
+		int point = random.nextInt(digits + 1);
+		for (int i = 0; i < digits; ++i) {
+			if (i == point) s.append('.');
+			s.append((char) ('0' + random.nextInt(10)));
+		}
+		if (random.nextBoolean()) {
+			s.append(random.nextBoolean() ? 'e' : 'E').append(random.nextInt(700) - 350);
+		}
+		return s.toString();
+	}
+
+	private static String randomString(Random random, String alphabet) {
+		char[] chars = new char[random.nextInt(12)];
+		for (int i = 0; i < chars.length; ++i) {
+			chars[i] = alphabet.charAt(random.nextInt(alphabet.length()));
+		}
+		return new String(chars);
+	}
+
+	private static void assertSameOutcome(String input, Function<String, Object> jdk, Function<CharSequence, Object> parser) {
+		assertEquals("Parsing \"" + input + "\"", outcome(() -> jdk.apply(input)), outcome(() -> parser.apply(new StringBuilder(input))));
+	}
+
+	/**
+	 * @return the value parsed, or the type of exception thrown
+	 */
+	private static String outcome(Supplier<Object> parse) {
+		try {
+			Object value = parse.get();
+			return value instanceof Double ? "double " + Long.toHexString(Double.doubleToRawLongBits((Double) value)) : value.getClass().getSimpleName() + " " + value;
+		} catch (RuntimeException e) {
+			return "throws " + e.getClass().getName();
+		}
+	}
+}
@@ -0,0 +1,98 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.github.jespersm.janusgraph.csvimport.idmap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+/**
+ * Real fingerprints practically never collide, so the maps behind them only see the lowest
+ * bits of each fingerprint here, which makes nearly every id collide with another.
+ */
+public class FingerprintIdMapTest {
+	private static final int IDS = 1000;
+	private static final long KEY_MASK = 7;
+
+	@Test
+	public void keepsCollidingIdsApart() {
+		FingerprintIdMap map = new FingerprintIdMap(new MaskedIdMap(), new MaskedIdMap());
+		for (int i = 0; i < IDS; ++i) {
+			assertTrue(map.putIfAbsent("id" + i, i + 1));
+			assertTrue(map.putIfAbsent(i, IDS + i + 1));
+		}
+		for (int i = 0; i < IDS; ++i) {
+			assertFalse(map.putIfAbsent("id" + i, 3 * IDS));
+			assertFalse(map.putIfAbsent((long) i, 3 * IDS));
+		}
+		assertEquals(2 * IDS, map.size());
+		for (int i = 0; i < IDS; ++i) {
+			assertEquals(i + 1, map.get("id" + i));
+			assertEquals(IDS + i + 1, map.get(i));
+			assertEquals(IDS + i + 1, map.get((long) i));
+		}
+		assertEquals(IdMap.MISSING, map.get("id" + IDS));
+		assertEquals(IdMap.MISSING, map.get(IDS));
+	}
+
+	/**
+	 * A map which only keeps the lowest bits of the keys.
+	 */
+	private static final class MaskedIdMap implements LongKeyIdMap {
+		private final LongIdMap map = new LongIdMap();
+
+		@Override
+		public boolean putIfAbsent(long key, long vertexId) {
+			return map.putIfAbsent(key & KEY_MASK, vertexId);
+		}
+
+		@Override
+		public long get(long key) {
+			return map.get(key & KEY_MASK);
+		}
+
+		@Override
+		public boolean putIfAbsent(Object csvId, long vertexId) {
+			return putIfAbsent(((Number) csvId).longValue(), vertexId);
+		}
+
+		@Override
+		public long get(Object csvId) {
+			return get(((Number) csvId).longValue());
+		}
+
+		@Override
+		public long size() {
+			return map.size();
+		}
+
+		@Override
+		public long estimatedBytes() {
+			return map.estimatedBytes();
+		}
+
+		@Override
+		public void freeze() throws IOException {
+			map.freeze();
+		}
+
+		@Override
+		public void close() throws IOException {
+			map.close();
+		}
+	}
+}
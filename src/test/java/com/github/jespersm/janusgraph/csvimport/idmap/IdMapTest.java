@@ -0,0 +1,119 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.github.jespersm.janusgraph.csvimport.idmap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.IntFunction;
+
+import org.junit.Test;
+
+/**
+ * Parser threads put and look up ids concurrently, and an id must map to the vertex of
+ * whichever thread put it first, whatever the type of number it was parsed as.
+ */
+public class IdMapTest {
+	private static final int THREADS = 8;
+	private static final int IDS = 50_000;
+
+	@Test
+	public void longIdMapKeepsTheFirstPutOfEachNumber() throws Exception {
+		assertFirstPutWins(new LongIdMap(), IdMapTest::number);
+	}
+
+	@Test
+	public void objectIdMapKeepsTheFirstPutOfEachNumber() throws Exception {
+		assertFirstPutWins(new ObjectIdMap(0), IdMapTest::number);
+	}
+
+	@Test
+	public void objectIdMapKeepsTheFirstPutOfEachString() throws Exception {
+		assertFirstPutWins(new ObjectIdMap(0), thread -> i -> "id" + i);
+	}
+
+	@Test
+	public void fingerprintIdMapKeepsTheFirstPutOfEachNumber() throws Exception {
+		assertFirstPutWins(new FingerprintIdMap(new LongIdMap(), new LongIdMap()), IdMapTest::number);
+	}
+
+	@Test
+	public void fingerprintIdMapKeepsTheFirstPutOfEachString() throws Exception {
+		assertFirstPutWins(new FingerprintIdMap(new LongIdMap(), new LongIdMap()), thread -> i -> "id" + i);
+	}
+
+	@Test
+	public void numbersAndStringsAreDifferentIds() {
+		for (IdMap map : new IdMap[] { new ObjectIdMap(0), new FingerprintIdMap(new LongIdMap(), new LongIdMap()) }) {
+			assertTrue(map.putIfAbsent(5, 1));
+			assertFalse(map.putIfAbsent(5L, 2));
+			assertFalse(map.putIfAbsent((short) 5, 3));
+			assertTrue(map.putIfAbsent("5", 4));
+			assertEquals(1, map.get((byte) 5));
+			assertEquals(4, map.get("5"));
+			assertEquals(IdMap.MISSING, map.get("6"));
+			assertEquals(IdMap.MISSING, map.get(6));
+		}
+	}
+
+	/**
+	 * Every thread puts every id, half of them as Integers and half as Longs where the ids are
+	 * numbers, and looks each one up right after. Exactly one put per id must succeed, and all
+	 * lookups must return its vertex.
+	 */
+	private static void assertFirstPutWins(IdMap map, IntFunction<IntFunction<Object>> ids) throws Exception {
+		AtomicLongArray winners = new AtomicLongArray(IDS);
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+			for (int t = 0; t < THREADS; ++t) {
+				int thread = t;
+				IntFunction<Object> id = ids.apply(thread);
+				futures.add(executor.submit(() -> {
+					for (int n = 0; n < IDS; ++n) {
+						int i = (n * 7919 + thread * IDS / THREADS) % IDS;
+						long vertexId = (long) thread * IDS + i + 1;
+						if (map.putIfAbsent(id.apply(i), vertexId)) {
+							assertTrue("Id " + i + " was put twice", winners.compareAndSet(i, 0, vertexId));
+						}
+						assertNotEquals("Id " + i + " is missing", IdMap.MISSING, map.get(id.apply(i)));
+					}
+				}));
+			}
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} finally {
+			executor.shutdown();
+		}
+		assertEquals(IDS, map.size());
+		for (int t = 0; t < THREADS; ++t) {
+			IntFunction<Object> id = ids.apply(t);
+			for (int i = 0; i < IDS; ++i) {
+				assertEquals("Vertex of id " + id.apply(i), winners.get(i), map.get(id.apply(i)));
+			}
+		}
+	}
+
+	private static IntFunction<Object> number(int thread) {
+		return thread % 2 == 0 ? i -> Integer.valueOf(i) : i -> Long.valueOf(i);
+	}
+}
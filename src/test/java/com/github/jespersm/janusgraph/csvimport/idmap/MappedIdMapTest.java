@@ -0,0 +1,90 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.github.jespersm.janusgraph.csvimport.idmap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * With no memory budget the map spills every few hundred ids, so the ids end up spread over
+ * many segments, which must all be searched until freezing merges them into one.
+ */
+public class MappedIdMapTest {
+	private static final int IDS = 20_000;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void findsIdsBeforeAndAfterFreezing() throws Exception {
+		long[] keys = keys();
+		File scratch = folder.newFolder();
+		try (MappedIdMap map = new MappedIdMap(scratch, 0)) {
+			for (int i = 0; i < IDS; ++i) {
+				assertTrue(map.putIfAbsent(keys[i], i + 1));
+				// Whether it is still in the buffer or was spilled with it
+				assertEquals(i + 1, map.get(keys[i]));
+				if (i > 0) {
+					assertFalse(map.putIfAbsent(keys[i / 2], IDS + 1));
+				}
+			}
+			assertTrue("Expected segments in " + scratch, scratch.list().length > 10);
+			assertEquals(IDS, map.size());
+			assertAllFound(map, keys);
+
+			map.freeze();
+			assertEquals(1, scratch.list().length);
+			assertEquals(IDS, map.size());
+			assertAllFound(map, keys);
+		}
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void refusesIdsAfterFreezing() throws Exception {
+		try (MappedIdMap map = new MappedIdMap(folder.newFolder(), 0)) {
+			map.putIfAbsent(1L, 1);
+			map.freeze();
+			map.putIfAbsent(2L, 2);
+		}
+	}
+
+	private static void assertAllFound(MappedIdMap map, long[] keys) {
+		for (int i = 0; i < IDS; ++i) {
+			assertEquals(i + 1, map.get(keys[i]));
+			assertEquals(i + 1, map.get((Object) keys[i]));
+		}
+		assertEquals(IdMap.MISSING, map.get(0L));
+		assertEquals(IdMap.MISSING, map.get(Long.MIN_VALUE));
+		assertEquals(IdMap.MISSING, map.get("1"));
+	}
+
+	/**
+	 * @return distinct keys, none of them 0 or Long.MIN_VALUE, of both signs and in no particular order
+	 */
+	private static long[] keys() {
+		Random random = new Random(42);
+		long[] keys = new long[IDS];
+		for (int i = 0; i < IDS; ++i) {
+			keys[i] = (random.nextLong() & ~0xffffL) | (i + 1);
+		}
+		return keys;
+	}
+}
@@ -0,0 +1,123 @@
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.github.jespersm.janusgraph.csvimport.staging;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.function.LongUnaryOperator;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.github.jespersm.janusgraph.csvimport.EdgeFileHandler;
+import com.github.jespersm.janusgraph.csvimport.RowBatch;
+import com.github.jespersm.janusgraph.csvimport.commit.RowCountCommitPolicy;
+import com.github.jespersm.janusgraph.csvimport.schema.SchemaBuilder;
+
+/**
+ * Runs of ten rows make hundreds of runs, so the merge takes more than one pass. The rows must
+ * come out in the order of the storage keys of their vertices, as unsigned numbers, each exactly
+ * once and in batches of the handler they came from.
+ */
+public class EdgeStagerTest {
+	private static final int ROWS = 7000;
+	private static final int RUN_ROWS = 10;
+	private static final int COMMIT_ROWS = 7;
+	/** Scatters the vertex ids over the whole range of keys, negative ones included */
+	private static final LongUnaryOperator STORAGE_KEY = id -> id * 0x9E3779B97F4A7C15L;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void mergesManyRunsInOrder() throws Exception {
+		List<EdgeFileHandler> handlers = Arrays.asList(handler("KNOWS"), handler("MET"));
+		File directory = folder.newFolder();
+		List<String> submitted = new ArrayList<>();
+		List<RowBatch> merged = new ArrayList<>();
+		try (EdgeStager stager = new EdgeStager(directory, handlers, RUN_ROWS, STORAGE_KEY)) {
+			Random random = new Random(42);
+			for (int i = 0; i < ROWS; i += 3) {
+				int h = random.nextInt(handlers.size());
+				RowBatch batch = new RowBatch(handlers.get(h), null);
+				for (int j = i; j < Math.min(i + 3, ROWS); ++j) {
+					// Few start vertices, so the end vertices decide the order of many rows
+					Object[] row = { (long) random.nextInt(100) + 1, (long) random.nextInt(10000) + 1, h == 0 ? "KNOWS" : "MET" };
+					batch.add(row);
+					submitted.add(describe(row));
+				}
+				stager.submit(batch);
+			}
+			stager.finishRuns();
+			assertTrue("Expected more runs than are merged at once", directory.list().length > 64);
+
+			stager.merge(merged::add);
+		}
+		assertEquals(0, directory.list().length);
+
+		List<String> written = new ArrayList<>();
+		for (EdgeFileHandler handler : handlers) {
+			long[] last = null;
+			for (RowBatch batch : merged) {
+				if (batch.getHandler() != handler) continue;
+				assertTrue(batch.size() <= COMMIT_ROWS);
+				for (Object[] row : batch.getRows()) {
+					assertEquals(handler == handlers.get(0) ? "KNOWS" : "MET", row[2]);
+					long[] keys = { STORAGE_KEY.applyAsLong((Long) row[0]), STORAGE_KEY.applyAsLong((Long) row[1]) };
+					if (last != null) {
+						int order = Long.compareUnsigned(last[0], keys[0]);
+						assertTrue("Out of order: " + describe(row), order < 0 || order == 0 && Long.compareUnsigned(last[1], keys[1]) <= 0);
+					}
+					last = keys;
+					written.add(describe(row));
+				}
+			}
+		}
+		Collections.sort(submitted);
+		Collections.sort(written);
+		assertEquals(submitted, written);
+	}
+
+	private EdgeFileHandler handler(String type) throws IOException {
+		File file = folder.newFile(type + ".csv");
+		Files.write(file.toPath(), "id:long:START_ID,id:long:END_ID,:TYPE\n".getBytes(StandardCharsets.UTF_8));
+		EdgeFileHandler handler = new EdgeFileHandler(file.getPath(), -1, false, false);
+		handler.parseHeaders(schema());
+		handler.setCommitPolicy(new RowCountCommitPolicy(COMMIT_ROWS));
+		return handler;
+	}
+
+	/**
+	 * @return a schema builder which ignores what it's told
+	 */
+	private static SchemaBuilder schema() {
+		return (SchemaBuilder) Proxy.newProxyInstance(SchemaBuilder.class.getClassLoader(), new Class<?>[] { SchemaBuilder.class },
+				(proxy, method, args) -> method.getReturnType() == SchemaBuilder.class ? proxy : null);
+	}
+
+	private static String describe(Object[] row) {
+		return row[0] + "," + row[1] + "," + row[2];
+	}
+}